@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Fixtures shared by the benchmarks: generated report archives and minimal Stapler
+ * request/response objects that discard everything written to them.
+ */
+final class BenchmarkSupport {
+
+    static final String REPORT_ID = "report";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Creates "&lt;build&gt;/lcreports/report.zip" laid out like a LoadComplete report:
+     * an index page, the report data and the given number of small assets.
+     *
+     * @return the archive
+     */
+    static File createReportArchive(File buildDirectory, int assets) throws IOException {
+        File reportsDirectory = new File(buildDirectory, Constants.REPORTS_DIRECTORY_NAME);
+        if (!reportsDirectory.isDirectory() && !reportsDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + reportsDirectory);
+        }
+
+        File archive = new File(reportsDirectory, REPORT_ID + Constants.ZIP_FILE_EXTENSION);
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            putEntry(output, "index.html", page(4 * 1024));
+            putEntry(output, "data/report.data", page(256 * 1024));
+            for (int i = 0; i < assets; i++) {
+                putEntry(output, getAssetName(i), page(512 + i % 1024));
+            }
+        } finally {
+            output.close();
+        }
+        return archive;
+    }
+
+    static String getAssetName(int index) {
+        return String.format("assets/%03d/file%06d.js", index % 100, index);
+    }
+
+    private static void putEntry(ZipOutputStream output, String name, byte[] data) throws IOException {
+        output.putNextEntry(new ZipEntry(name));
+        output.write(data);
+        output.closeEntry();
+    }
+
+    private static byte[] page(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append("<div class=\"row\">").append(builder.length()).append("</div>\n");
+        }
+        return builder.substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static File createTempDirectory() throws IOException {
+        File directory = File.createTempFile("lc-benchmark", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        return directory;
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * A GET request for the given path below the report action, e.g. "/report/index.html".
+     */
+    static StaplerRequest createRequest(final String restOfPath, final Map<String, String> headers) {
+        final ServletContext context = (ServletContext) createProxy(ServletContext.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getMimeType")) {
+                    String name = (String) args[0];
+                    if (name.endsWith(".html")) {
+                        return "text/html";
+                    }
+                    return name.endsWith(".js") ? "application/javascript" : null;
+                }
+                return getDefaultValue(method);
+            }
+        });
+
+        final Stapler stapler = new Stapler() {
+            @Override
+            public ServletContext getServletContext() {
+                return context;
+            }
+        };
+
+        final Map<String, String> requestHeaders = new HashMap<String, String>(headers);
+        return (StaplerRequest) createProxy(StaplerRequest.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getMethod")) {
+                    return "GET";
+                } else if (name.equals("getRestOfPath")) {
+                    return restOfPath;
+                } else if (name.equals("getStapler")) {
+                    return stapler;
+                } else if (name.equals("getHeader")) {
+                    return requestHeaders.get((String) args[0]);
+                } else if (name.equals("getDateHeader")) {
+                    return -1L;
+                }
+                return getDefaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * A response that drains served streams and discards the output, so the whole cost
+     * of reading the entry stays in the measurement.
+     */
+    static StaplerResponse createResponse() {
+        final ServletOutputStream outputStream = new NullServletOutputStream();
+        final PrintWriter writer = new PrintWriter(new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        return (StaplerResponse) createProxy(StaplerResponse.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+                String name = method.getName();
+                if (name.equals("getOutputStream")) {
+                    return outputStream;
+                } else if (name.equals("getWriter")) {
+                    return writer;
+                } else if (name.equals("serveFile") && args.length > 1 && args[1] instanceof InputStream) {
+                    drain((InputStream) args[1], outputStream);
+                    return null;
+                } else if (name.equals("sendError")) {
+                    throw new IllegalStateException("Unexpected status " + args[0]);
+                }
+                return getDefaultValue(method);
+            }
+        });
+    }
+
+    private static void drain(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+    }
+
+    private static Object createProxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(BenchmarkSupport.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object getDefaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type.isPrimitive() && type != void.class) {
+            throw new UnsupportedOperationException(method.getName());
+        }
+        return null;
+    }
+
+    private static class NullServletOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+    }
+
+}
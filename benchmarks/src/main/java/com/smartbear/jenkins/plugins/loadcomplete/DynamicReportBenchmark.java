@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.ServletException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A report request from {@link LCDynamicReportAction#doDynamic} to the last byte written,
+ * for entries of an extracted report and of the archive itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class DynamicReportBenchmark {
+
+    private static final String NEVER_EXPLODE =
+            "-Dcom.smartbear.jenkins.plugins.loadcomplete.LCExplodedReportCache.minRequests=2147483647";
+
+    @Param({"index.html", "data/report.data", "assets/050/file000050.js"})
+    public String entry;
+
+    @Param({"true", "false"})
+    public boolean acceptGzip;
+
+    private File directory;
+    private LCDynamicReportAction action;
+    private StaplerRequest entryRequest;
+    private StaplerRequest archiveRequest;
+    private StaplerResponse response;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkSupport.createTempDirectory();
+        File file = BenchmarkSupport.createReportArchive(directory, 10000);
+        action = new LCDynamicReportAction(file.getParent() + File.separator);
+
+        Map<String, String> headers = acceptGzip ?
+                Collections.singletonMap("Accept-Encoding", "gzip, deflate") :
+                Collections.<String, String>emptyMap();
+        entryRequest = BenchmarkSupport.createRequest("/" + BenchmarkSupport.REPORT_ID + "/" + entry, headers);
+        archiveRequest = BenchmarkSupport.createRequest("/" + BenchmarkSupport.REPORT_ID +
+                Constants.ZIP_FILE_EXTENSION, headers);
+        response = BenchmarkSupport.createResponse();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        LCExplodedReportCache.getInstance().evictDirectory(directory);
+        LCReportArchiveCache.getInstance().evictDirectory(directory);
+        BenchmarkSupport.deleteRecursively(directory);
+    }
+
+    /**
+     * The report is extracted after the first requests, so this measures the exploded cache.
+     */
+    @Benchmark
+    @Fork(1)
+    public void explodedEntry() throws IOException, ServletException {
+        action.doDynamic(entryRequest, response);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = NEVER_EXPLODE)
+    public void archiveEntry() throws IOException, ServletException {
+        action.doDynamic(entryRequest, response);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public void archiveDownload() throws IOException, ServletException {
+        action.doDynamic(archiveRequest, response);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Version comparison and installation lookup, done for every build step.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InstallationBenchmark {
+
+    private LCInstallation installation;
+    private List<LCInstallation> installations;
+    private LCInstallationsScanner scanner;
+
+    @Setup
+    public void setUp() {
+        installation = new LCInstallation("C:\\LoadComplete 4\\bin\\LoadComplete.exe", "4.97.1.21", 1L, 0L);
+
+        installations = new ArrayList<LCInstallation>();
+        for (int major = 2; major <= 5; major++) {
+            for (int minor = 0; minor < 5; minor++) {
+                String version = major + "." + (minor * 10) + "." + minor + ".1";
+                installations.add(new LCInstallation("C:\\LoadComplete " + version + "\\bin\\LoadComplete.exe",
+                        version, 1L, 0L));
+            }
+        }
+        scanner = new LCInstallationsScanner(null, null);
+    }
+
+    @Benchmark
+    public int compareVersion() {
+        return installation.compareVersion("4.97.2.0", false);
+    }
+
+    @Benchmark
+    public LCInstallation findAnyInstallation() {
+        return scanner.findInstallation(installations, Constants.ANY_CONSTANT);
+    }
+
+    @Benchmark
+    public LCInstallation findMajorVersion() {
+        return scanner.findInstallation(installations, "4");
+    }
+
+}
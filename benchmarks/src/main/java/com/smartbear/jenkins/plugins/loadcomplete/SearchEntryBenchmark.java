@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+/**
+ * Entry lookup in a report archive with many entries, see
+ * {@link LCDynamicReportAction#searchEntry(LCReportArchiveCache.Archive, String)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchEntryBenchmark {
+
+    @Param({"10000", "50000"})
+    public int entries;
+
+    private File directory;
+    private LCReportArchiveCache.Archive archive;
+    private LCDynamicReportAction action;
+    private String[] names;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+
+        String next(String[] names) {
+            index = (index + 7919) % names.length;
+            return names[index];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkSupport.createTempDirectory();
+        File file = BenchmarkSupport.createReportArchive(directory, entries);
+        archive = LCReportArchiveCache.getInstance().acquire(file);
+        action = new LCDynamicReportAction(file.getParent() + File.separator);
+
+        names = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            names[i] = BenchmarkSupport.getAssetName(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        LCReportArchiveCache.getInstance().release(archive);
+        LCReportArchiveCache.getInstance().evictDirectory(directory);
+        BenchmarkSupport.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public ZipEntry existingEntry(Cursor cursor) {
+        return action.searchEntry(archive, cursor.next(names));
+    }
+
+    @Benchmark
+    public ZipEntry missingEntry() {
+        return action.searchEntry(archive, "assets/missing.js");
+    }
+
+}
@@ -30,13 +30,16 @@ package com.smartbear.jenkins.plugins.loadcomplete;
 public class Constants {
 
     public static final String PLUGIN_URL = "loadcomplete";
+    public static final String METRICS_URL = "loadcomplete-metrics";
     public static final String PLUGIN_NAME = "LoadComplete";
     public static final String LOG_PREFIX = "LoadComplete";
     public static final String REPORTS_DIRECTORY_NAME = "lcreports";
+    public static final String EXPLODED_REPORTS_DIRECTORY_NAME = "lcreports-cache";
     public static final String ZIP_FILE_EXTENSION = ".zip";
     public static final String MHT_FILE_EXTENSION = ".mht";
     public static final String PDF_FILE_EXTENSION = ".pdf";
     public static final String ERROR_FILE_EXTENSION = ".txt";
+    public static final String METRICS_FILE_EXTENSION = ".metrics";
     public static final String ANY_CONSTANT = "any";
 
     public static final String DEFAULT_CHARSET_NAME = "UTF-8";
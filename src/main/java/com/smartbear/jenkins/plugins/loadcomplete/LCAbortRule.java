@@ -0,0 +1,257 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A condition on the progress of a running test that stops the test early, written as one line of text:
+ * <pre>
+ *   metric operator value [unit] for duration [unit]
+ * </pre>
+ * For example, "error rate &gt; 20% for 60 s" or "response time &gt; 10 s for 2 min". The metric is computed
+ * over the progress of the last duration, and the rule fires once the test has run for at least that long.
+ * The rules are evaluated on the node.
+ * <p>
+ * Each progress line reports an average response time of the requests since the previous line, so the
+ * response time of a rule is the mean of these averages. Percentiles cannot be computed from them and
+ * are not supported; use threshold rules on the report for those.
+ */
+class LCAbortRule implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String ERROR_RATE = "error rate";
+    static final String ERRORS = "errors";
+    static final String RESPONSE_TIME = "response time";
+    static final String REQUESTS = "requests/s";
+
+    private static final Pattern RULE_PATTERN = Pattern.compile(
+            "^(error\\s*rate|errors|response\\s*time|requests/s|req/s|rps)\\s*(<=|>=|<|>)\\s*" +
+                    "(\\d+(?:\\.\\d+)?)\\s*(ms|s|sec|%)?\\s+for\\s+(\\d+)\\s*(s|sec|seconds?|m|min|minutes?)?\\s*$",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final String COMMENT_PREFIX = "#";
+
+    private final String text;
+    private final String metric;
+    private final String operator;
+    private final double threshold;
+    private final long duration;
+
+    private LCAbortRule(String text, String metric, String operator, double threshold, long duration) {
+        this.text = text;
+        this.metric = metric;
+        this.operator = operator;
+        this.threshold = threshold;
+        this.duration = duration;
+    }
+
+    /**
+     * @return null if the text is not a valid rule
+     */
+    static LCAbortRule parse(String text) {
+        String line = text.trim();
+        Matcher matcher = RULE_PATTERN.matcher(line);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        String metric = matcher.group(1).toLowerCase(Locale.ENGLISH).replaceAll("\\s+", " ");
+        String operator = matcher.group(2);
+        double threshold = Double.parseDouble(matcher.group(3));
+        String unit = matcher.group(4) != null ? matcher.group(4).toLowerCase(Locale.ENGLISH) : "";
+        long duration = Long.parseLong(matcher.group(5));
+        String durationUnit = matcher.group(6) != null ? matcher.group(6).toLowerCase(Locale.ENGLISH) : "s";
+
+        if (metric.replace(" ", "").equals("errorrate")) {
+            metric = ERROR_RATE;
+        } else if (metric.equals("req/s") || metric.equals("rps")) {
+            metric = REQUESTS;
+        }
+
+        if (metric.equals(RESPONSE_TIME)) {
+            if (unit.equals("s") || unit.equals("sec")) {
+                threshold *= 1000;
+            } else if (!unit.isEmpty() && !unit.equals("ms")) {
+                return null;
+            }
+        } else if (metric.equals(ERROR_RATE)) {
+            if (!unit.isEmpty() && !unit.equals("%")) {
+                return null;
+            }
+        } else if (!unit.isEmpty()) {
+            return null;
+        }
+
+        duration = durationUnit.startsWith("m") ? TimeUnit.MINUTES.toMillis(duration) :
+                TimeUnit.SECONDS.toMillis(duration);
+        if (duration <= 0) {
+            return null;
+        }
+
+        return new LCAbortRule(line, metric, operator, threshold, duration);
+    }
+
+    /**
+     * Parses rules written one per line. Empty lines and lines starting with "#" are skipped.
+     *
+     * @return null if any of the lines is not a valid rule
+     */
+    static List<LCAbortRule> parseAll(String text) {
+        List<LCAbortRule> rules = new ArrayList<LCAbortRule>();
+        if (text == null) {
+            return rules;
+        }
+        for (String line : text.split("\\r?\\n")) {
+            if (line.trim().isEmpty() || line.trim().startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+            LCAbortRule rule = parse(line);
+            if (rule == null) {
+                return null;
+            }
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    /**
+     * @return the 1-based number of the first line that is not a valid rule, 0 if all of them are valid
+     */
+    static int findInvalidLine(String text) {
+        String[] lines = text.split("\\r?\\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (!line.isEmpty() && !line.startsWith(COMMENT_PREFIX) && parse(line) == null) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    /**
+     * @return how long back the rule looks, in milliseconds
+     */
+    long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @param history the progress of the test, oldest first
+     * @return the actual value if the rule fires, or null
+     */
+    Double check(List<LCProgress> history) {
+        if (history.isEmpty()) {
+            return null;
+        }
+
+        long now = history.get(history.size() - 1).getElapsed();
+        if (now < duration) {
+            return null;
+        }
+
+        int first = history.size() - 1;
+        while (first > 0 && now - history.get(first - 1).getElapsed() <= duration) {
+            first--;
+        }
+        List<LCProgress> window = history.subList(first, history.size());
+
+        double actual;
+        if (metric.equals(ERROR_RATE) || metric.equals(ERRORS)) {
+            // The errors are cumulative; the window starts at the last progress before it
+            LCProgress start = first > 0 ? history.get(first - 1) : null;
+            long last = history.get(history.size() - 1).getErrors();
+            if (last < 0 || (start != null && start.getErrors() < 0)) {
+                return null;
+            }
+            long errors = last - (start != null ? start.getErrors() : 0);
+            if (metric.equals(ERRORS)) {
+                actual = errors;
+            } else {
+                double requests = 0;
+                long previous = start != null ? start.getElapsed() : 0;
+                for (LCProgress progress : window) {
+                    requests += Math.max(0, progress.getRequestsPerSecond()) * (progress.getElapsed() - previous) / 1000;
+                    previous = progress.getElapsed();
+                }
+                if (requests <= 0) {
+                    return null;
+                }
+                actual = Math.min(100, errors * 100 / requests);
+            }
+        } else if (metric.equals(REQUESTS)) {
+            double sum = 0;
+            int count = 0;
+            for (LCProgress progress : window) {
+                if (progress.getRequestsPerSecond() >= 0) {
+                    sum += progress.getRequestsPerSecond();
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return null;
+            }
+            actual = sum / count;
+        } else {
+            double sum = 0;
+            int count = 0;
+            for (LCProgress progress : window) {
+                if (progress.getResponseTime() >= 0) {
+                    sum += progress.getResponseTime();
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return null;
+            }
+            actual = sum / count;
+        }
+
+        boolean fires;
+        if (operator.equals("<")) {
+            fires = actual < threshold;
+        } else if (operator.equals("<=")) {
+            fires = actual <= threshold;
+        } else if (operator.equals(">")) {
+            fires = actual > threshold;
+        } else {
+            fires = actual >= threshold;
+        }
+        return fires ? actual : null;
+    }
+
+}
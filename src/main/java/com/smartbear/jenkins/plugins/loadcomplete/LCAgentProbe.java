@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.remoting.Callable;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects everything the build step needs to know about the node in a single remote call:
+ * the OS, the LoadComplete installations and the prepared workspace.
+ */
+public class LCAgentProbe implements Callable<LCAgentProbe.Result, Exception>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String workspacePath;
+    private final ArrayList<LCInstallation> cachedInstallations;
+
+    /**
+     * @param cachedInstallations installations known from the previous scan, or null to force a scan
+     */
+    public LCAgentProbe(String workspacePath, List<LCInstallation> cachedInstallations) {
+        this.workspacePath = workspacePath;
+        this.cachedInstallations = cachedInstallations != null ?
+                new ArrayList<LCInstallation>(cachedInstallations) : null;
+    }
+
+    public static class Result implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private boolean windows = false;
+
+        private ArrayList<LCInstallation> installations = new ArrayList<LCInstallation>();
+        private boolean installationsUpToDate = false;
+
+        private String workspacePath = null;
+        private String workspaceError = null;
+        private long usableDiskSpace = -1;
+
+        private long osCheckTime = 0;
+        private long installationScanTime = 0;
+        private long workspaceSetupTime = 0;
+
+        public boolean isWindows() {
+            return windows;
+        }
+
+        public List<LCInstallation> getInstallations() {
+            return installations;
+        }
+
+        /**
+         * @return true if the cached installations passed to the probe are still valid
+         */
+        public boolean isInstallationsUpToDate() {
+            return installationsUpToDate;
+        }
+
+        public String getWorkspacePath() {
+            return workspacePath;
+        }
+
+        public String getWorkspaceError() {
+            return workspaceError;
+        }
+
+        public long getUsableDiskSpace() {
+            return usableDiskSpace;
+        }
+
+        /**
+         * @return milliseconds spent on the node checking the OS
+         */
+        public long getOsCheckTime() {
+            return osCheckTime;
+        }
+
+        /**
+         * @return milliseconds spent on the node checking or scanning the installations
+         */
+        public long getInstallationScanTime() {
+            return installationScanTime;
+        }
+
+        /**
+         * @return milliseconds spent on the node preparing the workspace
+         */
+        public long getWorkspaceSetupTime() {
+            return workspaceSetupTime;
+        }
+    }
+
+    public Result call() throws Exception {
+        Result result = new Result();
+
+        long phaseStart = System.nanoTime();
+        String os = System.getProperty("os.name");
+        result.windows = os != null && os.toLowerCase().contains("windows");
+        result.osCheckTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStart);
+        if (!result.windows) {
+            return result;
+        }
+
+        phaseStart = System.nanoTime();
+        if (cachedInstallations != null && LCInstallationsScanner.isUpToDateLocal(cachedInstallations)) {
+            result.installations = cachedInstallations;
+            result.installationsUpToDate = true;
+        } else {
+            result.installations = new ArrayList<LCInstallation>(LCInstallationsScanner.scanLocal());
+        }
+        result.installationScanTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStart);
+
+        phaseStart = System.nanoTime();
+        try {
+            prepareWorkspace(result);
+        } finally {
+            result.workspaceSetupTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStart);
+        }
+
+        return result;
+    }
+
+    private void prepareWorkspace(Result result) {
+
+        if (workspacePath == null) {
+            result.workspaceError = Messages.LCTestBuilder_WorkspaceNotSpecified();
+            return;
+        }
+
+        File workspace = new File(workspacePath);
+        if (!workspace.isDirectory() && !workspace.mkdirs()) {
+            result.workspaceError = String.format(Messages.LCTestBuilder_UnableToCreateWorkspace(), workspacePath);
+            return;
+        }
+
+        result.workspacePath = workspace.getAbsolutePath();
+        result.usableDiskSpace = workspace.getUsableSpace();
+    }
+
+    @Override
+    public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+        // Stub
+    }
+
+}
@@ -0,0 +1,698 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.remoting.Callable;
+import hudson.remoting.Channel;
+import hudson.remoting.ChannelClosedException;
+import hudson.remoting.RemoteInputStream;
+import hudson.remoting.RequestAbortedException;
+import hudson.remoting.VirtualChannel;
+import org.apache.commons.io.input.CountingInputStream;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Moves report files from the node to the controller.
+ * Regular files go in a single compressed stream where every file is followed by its MD5 checksum.
+ * Large files go in compressed, CRC-checked chunks that are requested in parallel and resumed after a reconnect.
+ * The node copies are deleted only when the controller has verified the whole file.
+ */
+public class LCArtifactTransfer {
+
+    private static final String PROPERTY_PREFIX = LCArtifactTransfer.class.getName();
+
+    private static final long CHUNKED_THRESHOLD = Long.getLong(PROPERTY_PREFIX + ".chunkedThreshold",
+            256L * 1024 * 1024);
+    private static final int CHUNK_SIZE = Integer.getInteger(PROPERTY_PREFIX + ".chunkSize", 8 * 1024 * 1024);
+    private static final int CHUNKS_IN_FLIGHT = Integer.getInteger(PROPERTY_PREFIX + ".chunksInFlight", 4);
+    private static final long RESUME_TIMEOUT = Long.getLong(PROPERTY_PREFIX + ".resumeTimeout",
+            TimeUnit.MINUTES.toMillis(5));
+
+    private static final long RECONNECT_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    private static final int CHUNK_RETRIES = 3;
+    private static final int STREAM_ATTEMPTS = 3;
+
+    private static final String PART_FILE_EXTENSION = ".part";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DIGEST_LENGTH = 16;
+
+    private final NodeConnection node;
+    private final TaskListener listener;
+    private long chunkedThreshold = CHUNKED_THRESHOLD;
+    private int chunkSize = CHUNK_SIZE;
+
+    private long bytes = 0;
+    private long compressedBytes = 0;
+    private long transferTime = 0;
+    private final Map<String, Long> fileTransferTimes = new LinkedHashMap<String, Long>();
+
+    public LCArtifactTransfer(final Computer computer, TaskListener listener) {
+        this(new NodeConnection() {
+            public VirtualChannel getChannel() {
+                return computer.getChannel();
+            }
+
+            public boolean isOnline() {
+                return computer.isOnline();
+            }
+
+            public String getDisplayName() {
+                return computer.getDisplayName();
+            }
+        }, listener);
+    }
+
+    LCArtifactTransfer(NodeConnection node, TaskListener listener) {
+        this.node = node;
+        this.listener = listener;
+    }
+
+    /**
+     * The connection to the node the files are transferred from. The channel changes when the node reconnects.
+     */
+    interface NodeConnection {
+
+        VirtualChannel getChannel();
+
+        boolean isOnline();
+
+        String getDisplayName();
+    }
+
+    /**
+     * @param chunkedThreshold files of at least this many bytes are transferred in chunks
+     * @param chunkSize bytes per chunk
+     */
+    void setChunking(long chunkedThreshold, int chunkSize) {
+        this.chunkedThreshold = chunkedThreshold;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param artifacts node files mapped to their controller targets
+     * @return paths of the node files that were received and verified
+     */
+    public Set<String> transfer(Map<FilePath, FilePath> artifacts) throws IOException, InterruptedException {
+        Set<String> received = new HashSet<String>();
+        if (artifacts.isEmpty()) {
+            return received;
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            List<String> sources = new ArrayList<String>();
+            List<File> targets = new ArrayList<File>();
+            for (Map.Entry<FilePath, FilePath> artifact : artifacts.entrySet()) {
+                sources.add(artifact.getKey().getRemote());
+                targets.add(new File(artifact.getValue().getRemote()));
+            }
+
+            long[] lengths = getChannel().call(new LengthCallable(sources));
+
+            List<String> streamSources = new ArrayList<String>();
+            List<File> streamTargets = new ArrayList<File>();
+            for (int i = 0; i < sources.size(); i++) {
+                if (lengths[i] >= chunkedThreshold) {
+                    long fileStartNanos = System.nanoTime();
+                    try {
+                        if (transferChunked(sources.get(i), targets.get(i), lengths[i])) {
+                            received.add(sources.get(i));
+                        }
+                    } finally {
+                        addFileTransferTime(targets.get(i), fileStartNanos);
+                    }
+                } else {
+                    streamSources.add(sources.get(i));
+                    streamTargets.add(targets.get(i));
+                }
+            }
+
+            if (!streamSources.isEmpty()) {
+                for (int attempt = 1; ; attempt++) {
+                    VirtualChannel channel = getChannel();
+                    try {
+                        received.addAll(transferStream(channel, streamSources, streamTargets));
+                        break;
+                    } catch (IOException e) {
+                        if (attempt >= STREAM_ATTEMPTS || !isChannelFailure(channel, e) || !waitForReconnect(channel)) {
+                            throw e;
+                        }
+                    } catch (RequestAbortedException e) {
+                        if (attempt >= STREAM_ATTEMPTS || !waitForReconnect(channel)) {
+                            throw e;
+                        }
+                    }
+                }
+            }
+        } finally {
+            transferTime += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        if (!received.isEmpty()) {
+            getChannel().call(new DeleteCallable(new ArrayList<String>(received)));
+        }
+
+        return received;
+    }
+
+    private Set<String> transferStream(VirtualChannel channel, List<String> sources, List<File> targets)
+            throws IOException, InterruptedException {
+
+        Set<String> received = new HashSet<String>();
+
+        long fileStartNanos = System.nanoTime();
+        InputStream remoteStream = channel.call(new SenderCallable(sources));
+        CountingInputStream counter = new CountingInputStream(remoteStream);
+        Inflater inflater = new Inflater();
+        DataInputStream data = new DataInputStream(new InflaterInputStream(counter, inflater, BUFFER_SIZE));
+
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] expectedDigest = new byte[DIGEST_LENGTH];
+
+            for (int i = 0; i < sources.size(); i++) {
+                long length = data.readLong();
+                MessageDigest digest = createDigest();
+
+                OutputStream output = new FileOutputStream(targets.get(i));
+                try {
+                    long remaining = length;
+                    while (remaining > 0) {
+                        int count = data.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (count < 0) {
+                            throw new IOException(Messages.LCArtifactTransfer_UnexpectedEndOfStream());
+                        }
+                        digest.update(buffer, 0, count);
+                        output.write(buffer, 0, count);
+                        remaining -= count;
+                    }
+                } finally {
+                    output.close();
+                }
+
+                data.readFully(expectedDigest);
+                bytes += length;
+
+                if (MessageDigest.isEqual(expectedDigest, digest.digest())) {
+                    received.add(sources.get(i));
+                } else if (!targets.get(i).delete()) {
+                    targets.get(i).deleteOnExit();
+                }
+
+                addFileTransferTime(targets.get(i), fileStartNanos);
+                fileStartNanos = System.nanoTime();
+            }
+        } finally {
+            compressedBytes += counter.getByteCount();
+            data.close();
+            inflater.end();
+        }
+
+        return received;
+    }
+
+    private boolean transferChunked(String source, File target, long length)
+            throws IOException, InterruptedException {
+
+        File partFile = new File(target.getPath() + PART_FILE_EXTENSION);
+        RandomAccessFile output = new RandomAccessFile(partFile, "rw");
+
+        try {
+            output.setLength(length);
+
+            ChunkedProgress progress = new ChunkedProgress();
+            while (progress.confirmed < length) {
+                VirtualChannel channel = getChannel();
+                try {
+                    transferChunks(channel, source, output, progress, length);
+                } catch (IOException e) {
+                    if (!isChannelFailure(channel, e) || !waitForReconnect(channel)) {
+                        throw e;
+                    }
+                    LCLog.warning(listener, Messages.LCArtifactTransfer_ResumingTransfer(), source,
+                            progress.confirmed, length);
+                } catch (RequestAbortedException e) {
+                    if (!waitForReconnect(channel)) {
+                        throw e;
+                    }
+                    LCLog.warning(listener, Messages.LCArtifactTransfer_ResumingTransfer(), source,
+                            progress.confirmed, length);
+                }
+            }
+        } finally {
+            output.close();
+        }
+
+        String expectedDigest = getChannel().call(new DigestCallable(source));
+        if (!expectedDigest.equals(Util.getDigestOf(partFile))) {
+            if (!partFile.delete()) {
+                partFile.deleteOnExit();
+            }
+            return false;
+        }
+
+        if (target.exists() && !target.delete()) {
+            throw new IOException(String.format(Messages.LCArtifactTransfer_UnableToDelete(), target));
+        }
+        if (!partFile.renameTo(target)) {
+            throw new IOException(String.format(Messages.LCArtifactTransfer_UnableToRename(), partFile, target));
+        }
+
+        bytes += length;
+        return true;
+    }
+
+    private static class ChunkedProgress {
+
+        // everything before this offset has been written and verified
+        private long confirmed = 0;
+    }
+
+    private void transferChunks(VirtualChannel channel, String source, RandomAccessFile output,
+                                ChunkedProgress progress, long length) throws IOException, InterruptedException {
+
+        LinkedList<Future<Chunk>> inFlight = new LinkedList<Future<Chunk>>();
+        long nextOffset = progress.confirmed;
+
+        try {
+            while (progress.confirmed < length) {
+                while (inFlight.size() < Math.max(CHUNKS_IN_FLIGHT, 1) && nextOffset < length) {
+                    int size = (int) Math.min(Math.max(chunkSize, BUFFER_SIZE), length - nextOffset);
+                    inFlight.add(channel.callAsync(new ChunkCallable(source, nextOffset, size)));
+                    nextOffset += size;
+                }
+
+                Chunk chunk = getChunk(inFlight.removeFirst());
+                for (int retry = 0; !writeChunk(output, chunk); retry++) {
+                    if (retry >= CHUNK_RETRIES) {
+                        throw new IOException(String.format(Messages.LCArtifactTransfer_ChunkChecksumMismatch(),
+                                source, chunk.offset));
+                    }
+                    chunk = channel.call(new ChunkCallable(source, chunk.offset, chunk.length));
+                }
+                progress.confirmed = chunk.offset + chunk.length;
+            }
+        } finally {
+            for (Future<Chunk> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static Chunk getChunk(Future<Chunk> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private boolean writeChunk(RandomAccessFile output, Chunk chunk) throws IOException {
+        byte[] data = new byte[chunk.length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(chunk.data);
+            int count = 0;
+            while (count < data.length && !inflater.finished()) {
+                int inflated = inflater.inflate(data, count, data.length - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return false;
+                }
+                count += inflated;
+            }
+            if (count != data.length) {
+                return false;
+            }
+        } catch (DataFormatException e) {
+            return false;
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if (crc.getValue() != chunk.crc) {
+            return false;
+        }
+
+        output.seek(chunk.offset);
+        output.write(data);
+
+        compressedBytes += chunk.data.length;
+        return true;
+    }
+
+    private VirtualChannel getChannel() throws IOException {
+        VirtualChannel channel = node.getChannel();
+        if (channel == null) {
+            throw new IOException(String.format(Messages.LCArtifactTransfer_NodeIsOffline(), node.getDisplayName()));
+        }
+        return channel;
+    }
+
+    /**
+     * Tells a lost connection to the node, which is worth waiting for, from other failures such as
+     * a full disk on the controller or a checksum mismatch, which fail the transfer at once.
+     */
+    private static boolean isChannelFailure(VirtualChannel channel, IOException e) {
+        if (channel instanceof Channel && ((Channel) channel).isClosingOrClosed()) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ChannelClosedException || cause instanceof RequestAbortedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits until the node is connected again through a channel other than the failed one.
+     */
+    private boolean waitForReconnect(VirtualChannel failedChannel) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + RESUME_TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            VirtualChannel channel = node.getChannel();
+            if (channel != null && channel != failedChannel && node.isOnline()) {
+                return true;
+            }
+            Thread.sleep(RECONNECT_POLL_INTERVAL);
+        }
+        return false;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public long getTransferTime() {
+        return transferTime;
+    }
+
+    /**
+     * @return milliseconds spent on each file, by the name of the file; streamed files include their share of the stream setup
+     */
+    public Map<String, Long> getFileTransferTimes() {
+        return fileTransferTimes;
+    }
+
+    private void addFileTransferTime(File target, long startNanos) {
+        Long previous = fileTransferTimes.get(target.getName());
+        long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        fileTransferTimes.put(target.getName(), previous != null ? previous + time : time);
+    }
+
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    static class SenderCallable implements Callable<InputStream, IOException>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<String> sources;
+
+        SenderCallable(List<String> sources) {
+            this.sources = new ArrayList<String>(sources);
+        }
+
+        public InputStream call() throws IOException {
+            PipedInputStream input = new PipedInputStream(BUFFER_SIZE);
+            final PipedOutputStream output = new PipedOutputStream(input);
+
+            Thread sender = new Thread("LoadComplete report sender") {
+                @Override
+                public void run() {
+                    try {
+                        send(output);
+                    } catch (IOException e) {
+                        // The controller detects the truncated stream
+                    } finally {
+                        try {
+                            output.close();
+                        } catch (IOException e) {
+                            // Do nothing
+                        }
+                    }
+                }
+            };
+            sender.setDaemon(true);
+            sender.start();
+
+            return new RemoteInputStream(input, RemoteInputStream.Flag.GREEDY);
+        }
+
+        private void send(OutputStream output) throws IOException {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(output, deflater, BUFFER_SIZE));
+
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (String source : sources) {
+                    File file = new File(source);
+
+                    // ZIP reports are already compressed, do not waste the node CPU on them
+                    deflater.setLevel(source.endsWith(Constants.ZIP_FILE_EXTENSION) ?
+                            Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION);
+
+                    data.writeLong(file.length());
+                    MessageDigest digest = createDigest();
+
+                    InputStream input = new FileInputStream(file);
+                    try {
+                        int count;
+                        while ((count = input.read(buffer)) != -1) {
+                            digest.update(buffer, 0, count);
+                            data.write(buffer, 0, count);
+                        }
+                    } finally {
+                        input.close();
+                    }
+
+                    data.write(digest.digest());
+                }
+                data.close();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+            // Stub
+        }
+
+    }
+
+    static class Chunk implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final long offset;
+        final int length;
+        final long crc;
+        final byte[] data;
+
+        Chunk(long offset, int length, long crc, byte[] data) {
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+            this.data = data;
+        }
+    }
+
+    static class ChunkCallable implements Callable<Chunk, IOException>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String source;
+        private final long offset;
+        private final int length;
+
+        ChunkCallable(String source, long offset, int length) {
+            this.source = source;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public Chunk call() throws IOException {
+            byte[] data = new byte[length];
+            RandomAccessFile input = new RandomAccessFile(source, "r");
+            try {
+                input.seek(offset);
+                input.readFully(data);
+            } finally {
+                input.close();
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+
+            Deflater deflater = new Deflater(source.endsWith(Constants.ZIP_FILE_EXTENSION) ?
+                    Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+            } finally {
+                deflater.end();
+            }
+
+            return new Chunk(offset, length, crc.getValue(), compressed.toByteArray());
+        }
+
+        @Override
+        public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+            // Stub
+        }
+
+    }
+
+    static class LengthCallable implements Callable<long[], IOException>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<String> paths;
+
+        LengthCallable(List<String> paths) {
+            this.paths = new ArrayList<String>(paths);
+        }
+
+        public long[] call() throws IOException {
+            long[] lengths = new long[paths.size()];
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = new File(paths.get(i)).length();
+            }
+            return lengths;
+        }
+
+        @Override
+        public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+            // Stub
+        }
+
+    }
+
+    static class DigestCallable implements Callable<String, IOException>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+
+        DigestCallable(String path) {
+            this.path = path;
+        }
+
+        public String call() throws IOException {
+            return Util.getDigestOf(new File(path));
+        }
+
+        @Override
+        public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+            // Stub
+        }
+
+    }
+
+    static class DeleteCallable implements Callable<Void, IOException>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<String> paths;
+
+        DeleteCallable(List<String> paths) {
+            this.paths = new ArrayList<String>(paths);
+        }
+
+        public Void call() throws IOException {
+            for (String path : paths) {
+                File file = new File(path);
+                if (file.exists() && !file.delete()) {
+                    throw new IOException(String.format(Messages.LCArtifactTransfer_UnableToDelete(), path));
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+            // Stub
+        }
+
+    }
+
+}
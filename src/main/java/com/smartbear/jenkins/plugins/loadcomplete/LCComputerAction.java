@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.model.TransientComputerActionFactory;
+import hudson.remoting.VirtualChannel;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows the cached LoadComplete installations of a node and lets users rescan them.
+ */
+public class LCComputerAction implements Action {
+
+    private final Computer computer;
+
+    LCComputerAction(Computer computer) {
+        this.computer = computer;
+    }
+
+    public String getIconFileName() {
+        return "/plugin/" + Constants.PLUGIN_URL + "/images/lc-48x48.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.LCComputerAction_DisplayName();
+    }
+
+    public String getUrlName() {
+        return Constants.PLUGIN_URL;
+    }
+
+    public Computer getComputer() {
+        return computer;
+    }
+
+    public List<LCInstallation> getInstallations() {
+        return LCInstallationsCache.getInstance().getCached(computer.getName());
+    }
+
+    @RequirePOST
+    public HttpResponse doRescan() throws Exception {
+        computer.checkPermission(Computer.CONFIGURE);
+
+        LCInstallationsCache cache = LCInstallationsCache.getInstance();
+        cache.invalidate(computer.getName());
+
+        VirtualChannel channel = computer.getChannel();
+        if (channel != null) {
+            cache.rescan(computer.getName(), new LCInstallationsScanner(channel, TaskListener.NULL));
+        }
+
+        return HttpResponses.redirectToDot();
+    }
+
+    @Extension
+    public static class Factory extends TransientComputerActionFactory {
+
+        @Override
+        public Collection<? extends Action> createFor(Computer target) {
+            return Collections.singletonList(new LCComputerAction(target));
+        }
+
+    }
+
+}
@@ -24,19 +24,28 @@
 
 package com.smartbear.jenkins.plugins.loadcomplete;
 
+import hudson.Util;
 import hudson.model.Action;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Enumeration;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  * @author Igor Filin
@@ -45,6 +54,24 @@ public class LCDynamicReportAction implements Action{
 
     private final static String DOWNLOAD_FILE_NAME = "Test";
 
+    // Report files never change once the build has stored them
+    private final static String CACHE_CONTROL_IMMUTABLE = "private, max-age=31536000, immutable";
+    private final static String CACHE_CONTROL_REVALIDATE = "private, no-cache";
+    private final static String GZIP_TAG_SUFFIX = "-gzip";
+
+    // Upper bound of a single transferTo call, some platforms fail on larger counts
+    private final static long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+    private final static long[] UNSATISFIABLE_RANGE = new long[0];
+
+    private final static String PROPERTY_PREFIX = LCDynamicReportAction.class.getName();
+
+    // Requests that have to inflate entries over the limit wait for a short time, then are rejected with 503
+    private final static int MAX_CONCURRENT_INFLATIONS = Integer.getInteger(
+            PROPERTY_PREFIX + ".maxConcurrentInflations", Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    private final static long INFLATE_WAIT_TIMEOUT = Long.getLong(PROPERTY_PREFIX + ".inflateWaitTimeout", 2000);
+    private final static long RETRY_AFTER_SECONDS = 5;
+    private final static Semaphore INFLATE_PERMITS = new Semaphore(MAX_CONCURRENT_INFLATIONS, true);
+
     private final String baseReportsPath;
 
     LCDynamicReportAction(String baseReportsPath) {
@@ -103,17 +130,20 @@ public class LCDynamicReportAction implements Action{
                 return;
             }
 
-            FileInputStream fis = null;
+            String fileTag = "\"" + getFileTag(file) + "\"";
+            if (isNotModified(req, fileTag, file.lastModified(), true)) {
+                LCMetrics.getInstance().increment(LCMetrics.REPORT_REQUESTS, 1, "result", "not_modified");
+                sendNotModified(rsp, fileTag, CACHE_CONTROL_IMMUTABLE);
+                return;
+            }
 
+            long startNanos = System.nanoTime();
             try {
-                fis = new FileInputStream(file);
-                rsp.setHeader("Content-Disposition", "filename=\"" + DOWNLOAD_FILE_NAME + ext + "\"");
-                rsp.serveFile(req, fis, file.lastModified(), 0, file.length(), "mime-type:application/force-download");
-            } catch (IOException e) {
-                rsp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                serveReportFile(req, rsp, file, fileTag, ext);
             } finally {
-                if (fis != null)
-                    fis.close();
+                LCMetrics.getInstance().observe(LCMetrics.REPORT_REQUEST, System.nanoTime() - startNanos,
+                        "kind", "file");
+                LCMetrics.getInstance().increment(LCMetrics.REPORT_REQUESTS, 1, "result", "served");
             }
         } else {
             String archiveName = parts[0] + Constants.ZIP_FILE_EXTENSION;
@@ -130,60 +160,486 @@ public class LCDynamicReportAction implements Action{
                 entryName = path.substring(parts[0].length() + 1);
             }
 
-            ZipFile archive = null;
-            InputStream inputStream = null;
+            String entryTag = getEntryTag(logFile, entryName, acceptsGzip(req));
+            // Pages are revalidated (cheap with the ETag), the assets they reference are cached for good
+            String cacheControl = entryName.endsWith(".html") || entryName.endsWith(".htm") ?
+                    CACHE_CONTROL_REVALIDATE : CACHE_CONTROL_IMMUTABLE;
+
+            // "If-None-Match: *" is answered once the entry is known to exist
+            if (isNotModified(req, entryTag, logFile.lastModified(), false)) {
+                LCMetrics.getInstance().increment(LCMetrics.REPORT_REQUESTS, 1, "result", "not_modified");
+                sendEntryNotModified(rsp, entryTag, cacheControl);
+                return;
+            }
+
+            long startNanos = System.nanoTime();
+            boolean served = true;
             try {
-                archive = new ZipFile(logFile);
-                ZipEntry targetEntry = searchEntry(archive, entryName);
-                if (targetEntry == null) {
-                    rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
-                    return;
+                served = serveReportEntry(req, rsp, logFile, entryName, entryTag, cacheControl);
+            } finally {
+                if (served) {
+                    LCMetrics.getInstance().observe(LCMetrics.REPORT_REQUEST, System.nanoTime() - startNanos,
+                            "kind", "entry");
+                    LCMetrics.getInstance().increment(LCMetrics.REPORT_REQUESTS, 1, "result", "served");
                 }
+            }
+        }
+    }
 
-                inputStream = archive.getInputStream(targetEntry);
+    private static void serveReportFile(StaplerRequest req, StaplerResponse rsp, File file, String fileTag, String ext)
+            throws IOException {
+        FileChannel channel = null;
+
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            long length = channel.size();
+            long[] range = getRequestedRange(req, fileTag, file.lastModified(), length);
 
-                // Override content-type for "data/report.data*" files (must be "application/javascript")
-                if (entryName.startsWith("data/report.data")) {
-                    rsp.serveFile(req, inputStream, targetEntry.getTime(), 0, targetEntry.getSize(), "report_data.js");
-                } else {
-                    rsp.serveFile(req, inputStream, targetEntry.getTime(), 0, targetEntry.getSize(), targetEntry.getName());
+            rsp.setHeader("ETag", fileTag);
+            rsp.setHeader("Cache-Control", CACHE_CONTROL_IMMUTABLE);
+            rsp.setHeader("Accept-Ranges", "bytes");
+
+            if (range == UNSATISFIABLE_RANGE) {
+                rsp.setHeader("Content-Range", "bytes */" + length);
+                rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+
+            rsp.setHeader("Content-Disposition", "filename=\"" + DOWNLOAD_FILE_NAME + ext + "\"");
+            rsp.setContentType("application/force-download");
+            rsp.setDateHeader("Last-Modified", file.lastModified());
+
+            long start = 0;
+            long count = length;
+            if (range != null) {
+                start = range[0];
+                count = range[1] - range[0] + 1;
+                rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                rsp.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+            }
+            rsp.setHeader("Content-Length", Long.toString(count));
+
+            OutputStream output = rsp.getOutputStream();
+            copyRange(channel, start, count, output);
+            output.flush();
+        } catch (IOException e) {
+            if (!rsp.isCommitted()) {
+                rsp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        } finally {
+            if (channel != null)
+                channel.close();
+        }
+    }
+
+    /**
+     * @return false if the request was rejected because too many entries are being inflated
+     */
+    private boolean serveReportEntry(StaplerRequest req, StaplerResponse rsp, File logFile, String entryName,
+                                     String entryTag, String cacheControl) throws IOException {
+        LCExplodedReportCache explodedCache = LCExplodedReportCache.getInstance();
+        LCExplodedReportCache.Report report = explodedCache.acquire(logFile);
+        if (report != null) {
+            try {
+                LCExplodedReportCache.Item item = report.getItem(entryName);
+                // Unknown entries are looked up in the archive
+                if (item != null) {
+                    if (isAnyTagMatched(req)) {
+                        sendEntryNotModified(rsp, entryTag, cacheControl);
+                        return true;
+                    }
+                    boolean inflate = item.isGzip() && !acceptsGzip(req);
+                    if (inflate && !acquireInflatePermit(rsp)) {
+                        return false;
+                    }
+                    try {
+                        LCMetrics.getInstance().increment(LCMetrics.REPORT_ENTRIES, 1, "source", "exploded");
+                        setEntryHeaders(rsp, entryTag, cacheControl);
+                        serveExplodedEntry(req, rsp, report, item, getServedFileName(entryName, item.getName()));
+                    } finally {
+                        if (inflate) {
+                            INFLATE_PERMITS.release();
+                        }
+                    }
+                    return true;
+                }
+            } catch (Exception e) {
+                if (!rsp.isCommitted()) {
+                    rsp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                 }
+                return true;
+            } finally {
+                explodedCache.release(report);
             }
-            catch (Exception e) {
+        }
+
+        LCReportArchiveCache archiveCache = LCReportArchiveCache.getInstance();
+        LCReportArchiveCache.Archive archive = null;
+        InputStream inputStream = null;
+        boolean permitted = false;
+        try {
+            archive = archiveCache.acquire(logFile);
+            ZipEntry targetEntry = searchEntry(archive, entryName);
+            if (targetEntry == null) {
+                rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return true;
+            }
+
+            if (isAnyTagMatched(req)) {
+                sendEntryNotModified(rsp, entryTag, cacheControl);
+                return true;
+            }
+
+            LCZipDirectory.RawEntry rawEntry = archive.getRawEntry(targetEntry);
+            if (rawEntry != null && canServeRaw(req, rawEntry)) {
+                LCMetrics.getInstance().increment(LCMetrics.REPORT_ENTRIES, 1, "source", "archive");
+                setEntryHeaders(rsp, entryTag, cacheControl);
+                serveRawEntry(req, rsp, archive, rawEntry, getServedFileName(entryName, targetEntry.getName()));
+                return true;
+            }
+
+            if (!acquireInflatePermit(rsp)) {
+                return false;
+            }
+            permitted = true;
+            LCMetrics.getInstance().increment(LCMetrics.REPORT_ENTRIES, 1, "source", "archive");
+            setEntryHeaders(rsp, entryTag, cacheControl);
+            String fileName = getServedFileName(entryName, targetEntry.getName());
+
+            if (targetEntry.getSize() >= 0 && targetEntry.getSize() <= archiveCache.getMaxSharedEntrySize()) {
+                // Concurrent requests for the entry share one inflated copy, which is sent without the permit
+                inputStream = new ByteArrayInputStream(archiveCache.readEntry(archive, targetEntry));
+                INFLATE_PERMITS.release();
+                permitted = false;
+            } else {
+                // Larger entries are inflated while they are sent
+                inputStream = archive.getInputStream(targetEntry);
+            }
+            rsp.serveFile(req, inputStream, archive.getLastModified(), 0, targetEntry.getSize(), fileName);
+        }
+        catch (Exception e) {
+            if (!rsp.isCommitted()) {
                 rsp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        } finally {
+            if (permitted) {
+                INFLATE_PERMITS.release();
+            }
+            if (inputStream != null) {
+                inputStream.close();
+            }
+            if (archive != null) {
+                archiveCache.release(archive);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Limits the number of entries inflated on the controller at the same time, so a burst of report
+     * requests cannot occupy all of its processors. Files, raw entries and extracted gzip members are
+     * only copied and need no permit.
+     *
+     * @return false if the request was rejected with 503
+     */
+    private static boolean acquireInflatePermit(StaplerResponse rsp) throws IOException {
+        boolean acquired;
+        try {
+            acquired = INFLATE_PERMITS.tryAcquire(INFLATE_WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        if (!acquired) {
+            LCMetrics.getInstance().increment(LCMetrics.REPORT_REQUESTS, 1, "result", "rejected");
+            rsp.setHeader("Retry-After", Long.toString(RETRY_AFTER_SECONDS));
+            rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        return acquired;
+    }
+
+    private static void setEntryHeaders(StaplerResponse rsp, String tag, String cacheControl) {
+        rsp.setHeader("ETag", tag);
+        rsp.setHeader("Cache-Control", cacheControl);
+        rsp.setHeader("Vary", "Accept-Encoding");
+    }
+
+    private static String getServedFileName(String requestedName, String entryName) {
+        // Override content-type for "data/report.data*" files (must be "application/javascript")
+        return requestedName.startsWith("data/report.data") ? "report_data.js" : entryName;
+    }
+
+    private static void setContentType(StaplerRequest req, StaplerResponse rsp, String fileName) {
+        String mimeType = req.getStapler().getServletContext().getMimeType(fileName);
+        rsp.setContentType(mimeType != null ? mimeType : "application/octet-stream");
+    }
+
+    /**
+     * Sends an extracted entry with {@link #copyRange}. The file is not mapped, because a mapping stays open
+     * until it is garbage collected and would keep the cache from deleting the file. Gzip members are inflated
+     * only for clients that do not accept gzip.
+     */
+    private static void serveExplodedEntry(StaplerRequest req, StaplerResponse rsp, LCExplodedReportCache.Report report,
+                                           LCExplodedReportCache.Item item, String fileName)
+            throws IOException, ServletException {
+        if (item.isGzip() && !acceptsGzip(req)) {
+            InputStream inputStream = new GZIPInputStream(new FileInputStream(item.getFile()));
+            try {
+                rsp.serveFile(req, inputStream, report.getLastModified(), 0, item.getSize(), fileName);
             } finally {
-                if (inputStream != null) {
-                    inputStream.close();
+                inputStream.close();
+            }
+            return;
+        }
+
+        setContentType(req, rsp, fileName);
+        rsp.setDateHeader("Last-Modified", report.getLastModified());
+        if (item.isGzip()) {
+            rsp.setHeader("Content-Encoding", "gzip");
+        }
+
+        OutputStream output = rsp.getOutputStream();
+        FileChannel channel = FileChannel.open(item.getFile().toPath(), StandardOpenOption.READ);
+        try {
+            long length = channel.size();
+            rsp.setHeader("Content-Length", Long.toString(length));
+            copyRange(channel, 0, length, output);
+        } finally {
+            channel.close();
+        }
+        output.flush();
+    }
+
+    /**
+     * @return false if the entry has to be inflated on the controller
+     */
+    private static boolean canServeRaw(StaplerRequest req, LCZipDirectory.RawEntry rawEntry) {
+        if (rawEntry.isEncrypted()) {
+            return false;
+        }
+        return rawEntry.getMethod() == LCZipDirectory.METHOD_STORED ||
+                rawEntry.getMethod() == LCZipDirectory.METHOD_DEFLATED && acceptsGzip(req);
+    }
+
+    /**
+     * Sends the entry data as it is stored in the archive: stored entries as is,
+     * deflated entries wrapped into a gzip member.
+     */
+    private static void serveRawEntry(StaplerRequest req, StaplerResponse rsp, LCReportArchiveCache.Archive archive,
+                                      LCZipDirectory.RawEntry rawEntry, String fileName) throws IOException {
+        boolean gzip = rawEntry.getMethod() == LCZipDirectory.METHOD_DEFLATED;
+        long dataOffset = rawEntry.getDataOffset(archive.getChannel());
+        long dataLength = rawEntry.getCompressedSize();
+
+        setContentType(req, rsp, fileName);
+        rsp.setDateHeader("Last-Modified", archive.getLastModified());
+
+        if (gzip) {
+            rsp.setHeader("Content-Encoding", "gzip");
+            rsp.setHeader("Content-Length", Long.toString(LCZipDirectory.GZIP_HEADER.length + dataLength +
+                    LCZipDirectory.GZIP_TRAILER_LENGTH));
+        } else {
+            rsp.setHeader("Content-Length", Long.toString(dataLength));
+        }
+
+        OutputStream output = rsp.getOutputStream();
+        if (gzip) {
+            output.write(LCZipDirectory.GZIP_HEADER);
+        }
+
+        copyRange(archive.getChannel(), dataOffset, dataLength, output);
+
+        if (gzip) {
+            output.write(rawEntry.getGzipTrailer());
+        }
+
+        output.flush();
+    }
+
+    private static boolean acceptsGzip(StaplerRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
                 }
-                if (archive != null) {
-                    archive.close();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copies a part of the file with {@link FileChannel#transferTo}, so the JDK picks the cheapest
+     * way to move the bytes instead of pulling them through a buffer of our own.
+     */
+    private static void copyRange(FileChannel channel, long position, long length, OutputStream output)
+            throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        long end = position + length;
+        while (position < end) {
+            long count = channel.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, end - position), target);
+            if (count <= 0 && position >= channel.size()) {
+                throw new EOFException();
+            }
+            position += count;
+        }
+    }
+
+    /**
+     * Parses a single "bytes" range of the Range header.
+     *
+     * @return null if the whole file has to be sent, {@link #UNSATISFIABLE_RANGE} if the range
+     * lies beyond the end of the file, or the first and the last byte positions otherwise
+     */
+    private static long[] getRequestedRange(StaplerRequest req, String tag, long lastModified, long length) {
+        String range = req.getHeader("Range");
+        if (range == null || !isIfRangeMatched(req, tag, lastModified)) {
+            return null;
+        }
+
+        range = range.trim();
+        if (!range.startsWith("bytes=")) {
+            return null;
+        }
+        range = range.substring("bytes=".length()).trim();
+        // Multiple ranges are allowed to be answered with the whole representation
+        if (range.contains(",")) {
+            return null;
+        }
+
+        int dash = range.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        long first;
+        long last;
+        try {
+            String firstPart = range.substring(0, dash).trim();
+            String lastPart = range.substring(dash + 1).trim();
+            if (firstPart.isEmpty()) {
+                // Suffix range: the last N bytes
+                long suffixLength = Long.parseLong(lastPart);
+                if (suffixLength <= 0) {
+                    return UNSATISFIABLE_RANGE;
                 }
+                first = Math.max(0, length - suffixLength);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(firstPart);
+                last = lastPart.isEmpty() ? length - 1 : Math.min(Long.parseLong(lastPart), length - 1);
             }
+        } catch (NumberFormatException e) {
+            return null;
         }
+
+        if (first >= length) {
+            return UNSATISFIABLE_RANGE;
+        }
+        if (last < first) {
+            return null;
+        }
+        return new long[]{first, last};
     }
 
-    private ZipEntry searchEntry(ZipFile archive, String entryName) {
-        ZipEntry targetEntry = archive.getEntry(entryName);
-        if (targetEntry == null) {
-            entryName = entryName.replace("/", "\\");
-            targetEntry = archive.getEntry(entryName);
+    private static boolean isIfRangeMatched(StaplerRequest req, String tag, long lastModified) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Weak tags must not be used for ranges
+            return ifRange.equals(tag);
+        }
+
+        long date;
+        try {
+            date = req.getDateHeader("If-Range");
+        } catch (IllegalArgumentException e) {
+            return false;
         }
+        return date != -1 && lastModified / 1000 == date / 1000;
+    }
 
-        if (targetEntry == null) {
-            Enumeration<? extends ZipEntry> entries = archive.entries();
-            entryName = entryName.toUpperCase();
+    private static String getFileTag(File file) {
+        return Long.toHexString(file.lastModified()) + Long.toHexString(file.length());
+    }
 
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-                String currentEntryName = entry.getName().toUpperCase();
+    /**
+     * The tag of an entry is derived from the archive and the entry name only: the archive is immutable,
+     * so conditional requests are answered without opening it. Gzip-encoded responses carry a tag of
+     * their own, as their bytes differ from the identity encoding; whether a client gets gzip depends
+     * only on the entry and on the client accepting it, so the tag is known from the request.
+     */
+    private static String getEntryTag(File archive, String entryName, boolean gzip) {
+        return "\"" + getFileTag(archive) + "-" + Util.getDigestOf(entryName).substring(0, 16) +
+                (gzip ? GZIP_TAG_SUFFIX : "") + "\"";
+    }
 
-                if (currentEntryName.equals(entryName) || currentEntryName.replace("/", "\\").equals(entryName)) {
-                    return entry;
+    /**
+     * @param exists true if the resource is known to exist, so "If-None-Match: *" matches it
+     */
+    private static boolean isNotModified(StaplerRequest req, String entityTag, long lastModified, boolean exists) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-Modified-Since must be ignored when If-None-Match is present
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                // If-None-Match uses the weak comparison
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if ((exists && tag.equals("*")) || tag.equals(entityTag)) {
+                    return true;
                 }
             }
+            return false;
+        }
+
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = req.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
         }
+        return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static boolean isAnyTagMatched(StaplerRequest req) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        return ifNoneMatch != null && ifNoneMatch.trim().equals("*");
+    }
+
+    private static void sendNotModified(StaplerResponse rsp, String tag, String cacheControl) {
+        rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        rsp.setHeader("ETag", tag);
+        rsp.setHeader("Cache-Control", cacheControl);
+    }
+
+    private static void sendEntryNotModified(StaplerResponse rsp, String tag, String cacheControl) {
+        sendNotModified(rsp, tag, cacheControl);
+        rsp.setHeader("Vary", "Accept-Encoding");
+    }
 
-        return targetEntry;
+    ZipEntry searchEntry(LCReportArchiveCache.Archive archive, String entryName) {
+        return archive.getEntry(entryName);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,698 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+
+/**
+ * Extracts often requested report archives into a directory next to the reports of the build,
+ * so their entries can be served from plain files instead of the archive.
+ * Deflated entries are kept as gzip members and can be sent to clients as they are.
+ * The total size of the extracted reports is bounded, the least recently used reports are removed first.
+ * Reports are extracted in the background, and the reports left on disk by an earlier start
+ * are counted against the bound when Jenkins has loaded its jobs.
+ */
+public class LCExplodedReportCache {
+
+    private static final String PROPERTY_PREFIX = LCExplodedReportCache.class.getName();
+
+    private static final long MAX_SIZE = Long.getLong(PROPERTY_PREFIX + ".maxSize", 1024L * 1024 * 1024);
+    private static final int MIN_REQUESTS = Integer.getInteger(PROPERTY_PREFIX + ".minRequests", 3);
+    private static final int MAX_TRACKED_ARCHIVES = 1000;
+
+    private static final String INDEX_FILE_NAME = "index.properties";
+    private static final String FILES_DIRECTORY_NAME = "files";
+    private static final String GZIP_FILE_EXTENSION = ".gz";
+    private static final String ARCHIVE_LAST_MODIFIED_KEY = "archive.lastModified";
+    private static final String ARCHIVE_LENGTH_KEY = "archive.length";
+    private static final String ENTRY_KEY_PREFIX = "entry.";
+    private static final String TEMP_DIRECTORY_EXTENSION = ".tmp";
+
+    private static final LCExplodedReportCache INSTANCE = new LCExplodedReportCache(MAX_SIZE, MIN_REQUESTS,
+            createExecutor());
+
+    private final long maxSize;
+    private final int minRequests;
+    private final Executor executor;
+
+    // access-ordered, guarded by this
+    private final LinkedHashMap<String, Report> reports = new LinkedHashMap<String, Report>(16, 0.75f, true);
+    private long totalSize = 0;
+    // evicted reports whose files are still on disk and counted in the total size, guarded by this
+    private final Set<Report> undeleted = new LinkedHashSet<Report>();
+
+    // guarded by this
+    private final Map<String, Integer> requestCounts = new HashMap<String, Integer>();
+    private final Set<String> extracting = new HashSet<String>();
+
+    LCExplodedReportCache(long maxSize, int minRequests, Executor executor) {
+        this.maxSize = maxSize;
+        this.minRequests = minRequests;
+        this.executor = executor;
+    }
+
+    private static ExecutorService createExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LoadComplete report extractor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static LCExplodedReportCache getInstance() {
+        return INSTANCE;
+    }
+
+    public static class Report {
+
+        private final String key;
+        private final File directory;
+        private final long lastModified;
+        private final long length;
+        private final Map<String, Item> items;
+        private final Map<String, Item> normalizedItems;
+        private final long size;
+
+        // guarded by the cache
+        private int users = 0;
+        private boolean evicted = false;
+
+        Report(String key, File directory, long lastModified, long length, Map<String, Item> items) {
+            this.key = key;
+            this.directory = directory;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.items = items;
+
+            long itemsSize = 0;
+            Map<String, Item> normalized = new HashMap<String, Item>();
+            for (Item item : items.values()) {
+                itemsSize += item.getFile().length();
+                String name = LCReportArchiveCache.Archive.normalize(item.getName());
+                if (!normalized.containsKey(name)) {
+                    normalized.put(name, item);
+                }
+            }
+            this.normalizedItems = normalized;
+            this.size = itemsSize;
+        }
+
+        boolean isUpToDate(File archive) {
+            return archive.lastModified() == lastModified && archive.length() == length;
+        }
+
+        /**
+         * @return the modification time of the archive the report was extracted from
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Looks the entry up by its exact name, then ignoring the case and the kind of path separators.
+         */
+        public Item getItem(String entryName) {
+            Item item = items.get(entryName);
+            return item != null ? item : normalizedItems.get(LCReportArchiveCache.Archive.normalize(entryName));
+        }
+    }
+
+    public static class Item {
+
+        private final String name;
+        private final File file;
+        private final long crc;
+        private final long size;
+
+        Item(String name, File file, long crc, long size) {
+            this.name = name;
+            this.file = file;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        /**
+         * @return the name of the archive entry
+         */
+        public String getName() {
+            return name;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        /**
+         * @return the uncompressed size of the entry
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return true if the file holds the entry as a gzip member
+         */
+        public boolean isGzip() {
+            return file.getName().endsWith(GZIP_FILE_EXTENSION);
+        }
+    }
+
+    /**
+     * Returns the extracted report for the archive. Once the archive has been requested often enough
+     * it is extracted in the background; until then, and while the extraction runs, null is returned
+     * and the report has to be served from the archive.
+     * A returned report must be passed to {@link #release(Report)}.
+     */
+    public Report acquire(File archive) {
+        final String key = archive.getAbsolutePath();
+        final File directory = getDirectory(archive);
+        final File source = archive;
+        final boolean extracted;
+
+        synchronized (this) {
+            Report report = reports.get(key);
+            if (report != null && report.isUpToDate(archive)) {
+                return use(report);
+            }
+            if (report != null) {
+                remove(key);
+            }
+            if (extracting.contains(key)) {
+                return null;
+            }
+
+            // Reports extracted before the start are usually registered by the startup scan already
+            extracted = new File(directory, INDEX_FILE_NAME).isFile();
+            if (!extracted) {
+                if (archive.length() > maxSize) {
+                    return null;
+                }
+                Integer count = requestCounts.get(key);
+                count = count != null ? count + 1 : 1;
+                if (count < minRequests) {
+                    if (requestCounts.size() >= MAX_TRACKED_ARCHIVES) {
+                        requestCounts.clear();
+                    }
+                    requestCounts.put(key, count);
+                    return null;
+                }
+            }
+            requestCounts.remove(key);
+            extracting.add(key);
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Report created = null;
+                    try {
+                        if (extracted) {
+                            created = load(source, directory);
+                        }
+                        if (created == null) {
+                            created = extract(source, directory);
+                        }
+                    } catch (IOException e) {
+                        // The report will be served from the archive
+                    } finally {
+                        synchronized (LCExplodedReportCache.this) {
+                            extracting.remove(key);
+                            if (created != null) {
+                                register(created);
+                                evictOverflow();
+                            }
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                extracting.remove(key);
+            }
+        }
+        return null;
+    }
+
+    public synchronized void release(Report report) {
+        report.users--;
+        if (report.evicted && report.users == 0) {
+            deleteEvicted(report);
+        }
+    }
+
+    private Report use(Report report) {
+        report.users++;
+        return report;
+    }
+
+    /**
+     * Adds the report as the most recently used one. A report registered or evicted earlier for the same archive
+     * shares its directory, so it is only forgotten.
+     */
+    private void register(Report report) {
+        Report previous = reports.put(report.key, report);
+        if (previous != null) {
+            totalSize -= previous.getSize();
+        }
+        for (Iterator<Report> iterator = undeleted.iterator(); iterator.hasNext(); ) {
+            Report evicted = iterator.next();
+            if (evicted.key.equals(report.key)) {
+                iterator.remove();
+                totalSize -= evicted.getSize();
+            }
+        }
+        totalSize += report.getSize();
+    }
+
+    private void remove(String key) {
+        Report report = reports.remove(key);
+        if (report != null) {
+            report.evicted = true;
+            undeleted.add(report);
+            if (report.users == 0) {
+                deleteEvicted(report);
+            }
+        }
+    }
+
+    private void evictOverflow() {
+        for (Report report : new ArrayList<Report>(undeleted)) {
+            if (report.users == 0) {
+                deleteEvicted(report);
+            }
+        }
+        // the most recently used report is never evicted
+        while (reports.size() > 1 && totalSize > maxSize) {
+            remove(reports.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * The size of an evicted report is counted until its files are actually gone,
+     * a report that could not be deleted is tried again on the next eviction.
+     */
+    private void deleteEvicted(Report report) {
+        if (undeleted.contains(report) && delete(report.directory)) {
+            undeleted.remove(report);
+            totalSize -= report.getSize();
+        }
+    }
+
+    boolean delete(File directory) {
+        try {
+            Util.deleteRecursive(directory);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Registers the reports extracted into the build directories of the jobs before the start,
+     * oldest first, and deletes the ones whose archives have gone or changed, together with
+     * the leftovers of interrupted extractions.
+     */
+    void scan(Iterable<File> buildDirectories) {
+        final List<Report> found = new ArrayList<Report>();
+        final Map<Report, Long> times = new HashMap<Report, Long>();
+        Set<String> visited = new HashSet<String>();
+
+        for (File buildDirectory : buildDirectories) {
+            File[] runDirectories = buildDirectory.listFiles();
+            if (runDirectories == null) {
+                continue;
+            }
+            for (File runDirectory : runDirectories) {
+                if (Files.isSymbolicLink(runDirectory.toPath())) {
+                    continue;
+                }
+                File cacheDirectory = new File(runDirectory, Constants.EXPLODED_REPORTS_DIRECTORY_NAME);
+                File[] directories = cacheDirectory.listFiles();
+                if (directories == null || !visited.add(getCanonicalPath(cacheDirectory))) {
+                    continue;
+                }
+                for (File directory : directories) {
+                    Report report = scanDirectory(runDirectory, directory);
+                    if (report != null) {
+                        found.add(report);
+                        times.put(report, new File(directory, INDEX_FILE_NAME).lastModified());
+                    }
+                }
+            }
+        }
+
+        Collections.sort(found, new Comparator<Report>() {
+            @Override
+            public int compare(Report first, Report second) {
+                return Long.compare(times.get(first), times.get(second));
+            }
+        });
+
+        synchronized (this) {
+            // the scanned reports are older than the ones requested since the start
+            Map<String, Report> recent = new LinkedHashMap<String, Report>(reports);
+            reports.clear();
+            for (Report report : found) {
+                if (!recent.containsKey(report.key) && !extracting.contains(report.key)) {
+                    register(report);
+                }
+            }
+            reports.putAll(recent);
+            evictOverflow();
+        }
+    }
+
+    /**
+     * @return the report extracted into the directory, or null if it was deleted
+     */
+    private static Report scanDirectory(File runDirectory, File directory) {
+        File archive = new File(new File(runDirectory, Constants.REPORTS_DIRECTORY_NAME),
+                directory.getName() + Constants.ZIP_FILE_EXTENSION);
+        Report report = null;
+        if (!directory.getName().endsWith(TEMP_DIRECTORY_EXTENSION) && archive.isFile() &&
+                new File(directory, INDEX_FILE_NAME).isFile()) {
+            try {
+                report = load(archive.getAbsoluteFile(), directory);
+            } catch (IOException e) {
+                // Deleted below
+            }
+        }
+        if (report == null) {
+            try {
+                Util.deleteRecursive(directory);
+            } catch (IOException e) {
+                // Tried again on the next start
+            }
+        }
+        return report;
+    }
+
+    private static String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Forgets all reports of the build directory, for example before the build is deleted.
+     */
+    public synchronized void evictDirectory(File directory) {
+        String prefix = directory.getAbsolutePath() + File.separator;
+        List<String> keys = new ArrayList<String>();
+        for (String key : reports.keySet()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+
+    public synchronized int getReportCount() {
+        return reports.size();
+    }
+
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * "build/lcreports/id.zip" is extracted into "build/lcreports-cache/id".
+     */
+    static File getDirectory(File archive) {
+        String name = archive.getName();
+        if (name.endsWith(Constants.ZIP_FILE_EXTENSION)) {
+            name = name.substring(0, name.length() - Constants.ZIP_FILE_EXTENSION.length());
+        }
+        File buildDirectory = archive.getAbsoluteFile().getParentFile().getParentFile();
+        return new File(new File(buildDirectory, Constants.EXPLODED_REPORTS_DIRECTORY_NAME), name);
+    }
+
+    /**
+     * @return the report extracted earlier, or null if it is missing or was extracted from another archive
+     */
+    private static Report load(File archive, File directory) throws IOException {
+        Properties index = new Properties();
+        InputStream input = new FileInputStream(new File(directory, INDEX_FILE_NAME));
+        try {
+            index.load(input);
+        } finally {
+            input.close();
+        }
+
+        long lastModified;
+        long length;
+        try {
+            lastModified = Long.parseLong(index.getProperty(ARCHIVE_LAST_MODIFIED_KEY, ""));
+            length = Long.parseLong(index.getProperty(ARCHIVE_LENGTH_KEY, ""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (archive.lastModified() != lastModified || archive.length() != length) {
+            return null;
+        }
+
+        File filesDirectory = new File(directory, FILES_DIRECTORY_NAME);
+        Map<String, Item> items = new HashMap<String, Item>();
+        for (String key : index.stringPropertyNames()) {
+            if (!key.startsWith(ENTRY_KEY_PREFIX)) {
+                continue;
+            }
+            // <file name>,<crc>,<size>
+            String[] values = index.getProperty(key).split(",");
+            if (values.length != 3) {
+                return null;
+            }
+            File file = new File(filesDirectory, values[0]);
+            if (!file.isFile()) {
+                return null;
+            }
+            try {
+                String name = key.substring(ENTRY_KEY_PREFIX.length());
+                items.put(name, new Item(name, file, Long.parseLong(values[1], 16), Long.parseLong(values[2])));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        return new Report(archive.getAbsolutePath(), directory, lastModified, length, items);
+    }
+
+    /**
+     * Extracts the archive into a temporary directory and moves it into place, so a report directory
+     * either does not exist or is complete.
+     */
+    private static Report extract(File archive, File directory) throws IOException {
+        File parent = directory.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException(String.format(Messages.LCExplodedReportCache_UnableToCreateDirectory(),
+                    parent.getPath()));
+        }
+
+        File temp = new File(parent, "." + directory.getName() + "-" + System.nanoTime() + TEMP_DIRECTORY_EXTENSION);
+        File filesDirectory = new File(temp, FILES_DIRECTORY_NAME);
+        if (!filesDirectory.mkdirs()) {
+            throw new IOException(String.format(Messages.LCExplodedReportCache_UnableToCreateDirectory(),
+                    filesDirectory.getPath()));
+        }
+
+        LCReportArchiveCache archiveCache = LCReportArchiveCache.getInstance();
+        LCReportArchiveCache.Archive source = null;
+        try {
+            source = archiveCache.acquire(archive);
+
+            Properties index = new Properties();
+            index.setProperty(ARCHIVE_LAST_MODIFIED_KEY, Long.toString(source.getLastModified()));
+            index.setProperty(ARCHIVE_LENGTH_KEY, Long.toString(source.getLength()));
+
+            int fileNumber = 0;
+            Enumeration<? extends ZipEntry> entries = source.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String key = ENTRY_KEY_PREFIX + entry.getName();
+                if (entry.isDirectory() || index.containsKey(key)) {
+                    continue;
+                }
+
+                // Entries are stored under their numbers, their names may not be valid file names here
+                String fileName = Integer.toString(fileNumber++);
+                LCZipDirectory.RawEntry rawEntry = source.getRawEntry(entry);
+                boolean raw = rawEntry != null && !rawEntry.isEncrypted() &&
+                        (rawEntry.getMethod() == LCZipDirectory.METHOD_STORED ||
+                                rawEntry.getMethod() == LCZipDirectory.METHOD_DEFLATED);
+                boolean gzip = raw && rawEntry.getMethod() == LCZipDirectory.METHOD_DEFLATED;
+                if (gzip) {
+                    fileName += GZIP_FILE_EXTENSION;
+                }
+
+                FileOutputStream output = new FileOutputStream(new File(filesDirectory, fileName));
+                try {
+                    if (raw) {
+                        if (gzip) {
+                            output.write(LCZipDirectory.GZIP_HEADER);
+                        }
+                        copyRange(source.getChannel(), rawEntry.getDataOffset(source.getChannel()),
+                                rawEntry.getCompressedSize(), output.getChannel());
+                        if (gzip) {
+                            output.write(rawEntry.getGzipTrailer());
+                        }
+                    } else {
+                        copyStream(source.getInputStream(entry), output);
+                    }
+                } finally {
+                    output.close();
+                }
+
+                index.setProperty(key, fileName + "," + Long.toHexString(entry.getCrc()) + "," + entry.getSize());
+            }
+
+            // The index is written last, its presence marks a complete report
+            OutputStream indexOutput = new FileOutputStream(new File(temp, INDEX_FILE_NAME));
+            try {
+                index.store(indexOutput, null);
+            } finally {
+                indexOutput.close();
+            }
+
+            if (directory.exists()) {
+                Util.deleteRecursive(directory);
+            }
+            Files.move(temp.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Util.deleteRecursive(temp);
+            throw e;
+        } finally {
+            if (source != null) {
+                archiveCache.release(source);
+            }
+        }
+
+        return load(archive, directory);
+    }
+
+    private static void copyRange(FileChannel source, long position, long length, FileChannel target)
+            throws IOException {
+        long end = position + length;
+        while (position < end) {
+            long count = source.transferTo(position, end - position, target);
+            if (count <= 0 && position >= source.size()) {
+                throw new IOException(Messages.LCZipDirectory_InvalidArchive());
+            }
+            position += count;
+        }
+    }
+
+    private static void copyStream(InputStream input, OutputStream output) throws IOException {
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, count);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void scanBuildDirectories() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        final List<File> buildDirectories = new ArrayList<File>();
+        for (Job<?, ?> job : jenkins.getAllItems(Job.class)) {
+            buildDirectories.add(job.getBuildDir());
+        }
+        getInstance().executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getInstance().scan(buildDirectories);
+            }
+        });
+    }
+
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            getInstance().evictDirectory(run.getRootDir());
+        }
+
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of non-negative values. Each power of two range is split into
+ * 2^precision linear buckets, so a percentile is off by at most 1/2^precision of its value
+ * while the histogram stays a few kilobytes however many values it holds. Values below
+ * 2^(precision + 1) are recorded exactly.
+ * <p>
+ * Histograms can be merged, so percentiles of several tests are computed from their stored
+ * histograms without the raw samples. Merging histograms of different precision keeps the
+ * precision of the target histogram.
+ */
+public class LCHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int MIN_PRECISION = 3;
+    static final int MAX_PRECISION = 12;
+
+    static final int DEFAULT_PRECISION = Math.max(MIN_PRECISION, Math.min(MAX_PRECISION,
+            Integer.getInteger(LCHistogram.class.getName() + ".precision", 7)));
+
+    private final int precision;
+    private final int subBuckets;
+
+    private long[] counts;
+    private long totalCount = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+    private long sum = 0;
+
+    public LCHistogram() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision the number of bits of the sub-bucket index, from {@link #MIN_PRECISION} to {@link #MAX_PRECISION}
+     */
+    public LCHistogram(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(String.valueOf(precision));
+        }
+        this.precision = precision;
+        this.subBuckets = 1 << precision;
+        this.counts = new long[2 * subBuckets];
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        recordCount(value, 1);
+
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the values of another histogram to this one.
+     */
+    public void merge(LCHistogram other) {
+        if (other.totalCount == 0) {
+            return;
+        }
+
+        for (int index = 0; index < other.counts.length; index++) {
+            if (other.counts[index] == 0) {
+                continue;
+            }
+            if (other.precision == precision) {
+                ensureCapacity(index);
+                counts[index] += other.counts[index];
+            } else {
+                long value = (other.lowestValueAt(index) + other.highestValueAt(index)) / 2;
+                recordCount(value, other.counts[index]);
+            }
+        }
+
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public LCHistogram copy() {
+        LCHistogram result = new LCHistogram(precision);
+        result.merge(this);
+        return result;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    private void recordCount(long value, long count) {
+        int index = indexOf(value);
+        ensureCapacity(index);
+        counts[index] += count;
+    }
+
+    private void ensureCapacity(int index) {
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length + subBuckets));
+        }
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMin() {
+        return totalCount > 0 ? min : 0;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return totalCount > 0 ? (double) sum / totalCount : 0;
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return the value below or at which the given percentage of the recorded values lies
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * totalCount);
+        rank = Math.max(1, rank);
+
+        long cumulative = 0;
+        for (int index = 0; index < counts.length; index++) {
+            cumulative += counts[index];
+            if (cumulative >= rank) {
+                long value = (lowestValueAt(index) + highestValueAt(index)) / 2;
+                return Math.max(getMin(), Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    int indexOf(long value) {
+        if (value < 2 * subBuckets) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - precision;
+        int subBucket = (int) (value >>> shift);
+        return subBuckets * (shift + 1) + subBucket - subBuckets;
+    }
+
+    long lowestValueAt(int index) {
+        if (index < 2 * subBuckets) {
+            return index;
+        }
+        int shift = index / subBuckets - 1;
+        long subBucket = index % subBuckets + subBuckets;
+        return subBucket << shift;
+    }
+
+    long highestValueAt(int index) {
+        return lowestValueAt(index + 1) - 1;
+    }
+
+    /**
+     * Writes the histogram; only non-empty buckets are stored.
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeByte(precision);
+        output.writeLong(totalCount);
+        output.writeLong(getMin());
+        output.writeLong(max);
+        output.writeLong(sum);
+
+        int used = 0;
+        for (long count : counts) {
+            if (count != 0) {
+                used++;
+            }
+        }
+        output.writeInt(used);
+        for (int index = 0; index < counts.length; index++) {
+            if (counts[index] != 0) {
+                output.writeInt(index);
+                output.writeLong(counts[index]);
+            }
+        }
+    }
+
+    public static LCHistogram read(DataInput input) throws IOException {
+        int precision = input.readByte();
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IOException(Messages.LCReportMetrics_InvalidFile());
+        }
+        LCHistogram histogram = new LCHistogram(precision);
+        histogram.totalCount = input.readLong();
+        histogram.min = input.readLong();
+        histogram.max = input.readLong();
+        histogram.sum = input.readLong();
+        if (histogram.totalCount == 0) {
+            histogram.min = Long.MAX_VALUE;
+        }
+
+        int used = input.readInt();
+        for (int i = 0; i < used; i++) {
+            int index = input.readInt();
+            long count = input.readLong();
+            if (index < 0 || index > histogram.indexOf(Long.MAX_VALUE)) {
+                throw new IOException(Messages.LCReportMetrics_InvalidFile());
+            }
+            if (index >= histogram.counts.length) {
+                histogram.counts = Arrays.copyOf(histogram.counts, index + 1);
+            }
+            histogram.counts[index] = count;
+        }
+        return histogram;
+    }
+
+}
@@ -36,9 +36,18 @@ public class LCInstallation implements Serializable{
     private final String executorPath;
     private final String version;
 
+    private final long executorSize;
+    private final long executorLastModified;
+
     public LCInstallation(String executorPath, String version) {
+        this(executorPath, version, 0, 0);
+    }
+
+    public LCInstallation(String executorPath, String version, long executorSize, long executorLastModified) {
         this.executorPath = executorPath;
         this.version = version;
+        this.executorSize = executorSize;
+        this.executorLastModified = executorLastModified;
     }
 
     public String getExecutorPath() {
@@ -49,6 +58,14 @@ public class LCInstallation implements Serializable{
         return version;
     }
 
+    public long getExecutorSize() {
+        return executorSize;
+    }
+
+    public long getExecutorLastModified() {
+        return executorLastModified;
+    }
+
     public int compareVersion(String anotherVersion, boolean majorOnly) {
 
         int[] selfVersionParts = new int[VERSION_PARTS];
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller-side cache of the LoadComplete installations found on each node.
+ */
+public class LCInstallationsCache {
+
+    private static final long DEFAULT_TTL = Long.getLong(LCInstallationsCache.class.getName() + ".ttl",
+            TimeUnit.HOURS.toMillis(1));
+
+    // A node without installations is scanned again soon, LoadComplete may be being installed there
+    private static final long DEFAULT_NEGATIVE_TTL = Long.getLong(LCInstallationsCache.class.getName() + ".negativeTtl",
+            TimeUnit.MINUTES.toMillis(1));
+
+    private static final LCInstallationsCache INSTANCE = new LCInstallationsCache(DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final long ttl;
+    private final long negativeTtl;
+
+    /**
+     * @param negativeTtl how long the result of a scan that found no installations is kept
+     */
+    LCInstallationsCache(long ttl, long negativeTtl) {
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+    }
+
+    public static LCInstallationsCache getInstance() {
+        return INSTANCE;
+    }
+
+    private static class Entry {
+
+        private final List<LCInstallation> installations;
+        private final long timestamp;
+
+        Entry(List<LCInstallation> installations, long timestamp) {
+            this.installations = Collections.unmodifiableList(installations);
+            this.timestamp = timestamp;
+        }
+    }
+
+    public List<LCInstallation> rescan(String nodeName, LCInstallationsSource source) throws Exception {
+        Entry entry = new Entry(source.scan(), System.currentTimeMillis());
+        entries.put(nodeName, entry);
+        return entry.installations;
+    }
+
+    /**
+     * Returns the cached installations if they are younger than the TTL, otherwise null.
+     */
+    public List<LCInstallation> getFresh(String nodeName) {
+        Entry entry = entries.get(nodeName);
+        return isFresh(entry) ? entry.installations : null;
+    }
+
+    private boolean isFresh(Entry entry) {
+        if (entry == null) {
+            return false;
+        }
+        long age = System.currentTimeMillis() - entry.timestamp;
+        return age < (entry.installations.isEmpty() ? negativeTtl : ttl);
+    }
+
+    public void put(String nodeName, List<LCInstallation> installations) {
+        entries.put(nodeName, new Entry(installations, System.currentTimeMillis()));
+    }
+
+    public List<LCInstallation> getCached(String nodeName) {
+        Entry entry = entries.get(nodeName);
+        return entry != null ? entry.installations : null;
+    }
+
+    public void invalidate(String nodeName) {
+        entries.remove(nodeName);
+    }
+
+    @Extension
+    public static class ComputerListenerImpl extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            getInstance().invalidate(c.getName());
+        }
+
+    }
+
+}
@@ -35,13 +35,12 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
  * @author Igor Filin
  */
-public class LCInstallationsScanner implements Serializable {
+public class LCInstallationsScanner implements LCInstallationsSource, Serializable {
 
     private static final long serialVersionUID = 1L;
     private static final int REGISTRY_KEY_WOW64_32KEY = 0x0200;
@@ -65,12 +64,10 @@ public class LCInstallationsScanner implements Serializable {
         }
 
         public List<LCInstallation> call() throws Exception {
-            List<LCInstallation> result = new ArrayList<LCInstallation>();
-            scanForInstallations(result, "LoadComplete");
-            return result;
+            return scanLocal();
         }
 
-        private void scanForInstallations(List<LCInstallation> result, String executor) {
+        private static void scanForInstallations(List<LCInstallation> result, String executor) {
 
             String key = registryKey + executor + "\\";
             RegistryKey executorKey = null;
@@ -96,15 +93,15 @@ public class LCInstallationsScanner implements Serializable {
                             }
 
                             if (path != null && !path.isEmpty()) {
-                                String executorPath = path + "x64\\bin\\" + executor + ".exe";
-
-                                if (new File(executorPath).exists()) {
-                                    result.add(new LCInstallation(executorPath, version));
-                                } else {
-                                    executorPath = path + "bin\\" + executor + ".exe";
-                                    if (new File(executorPath).exists()) {
-                                        result.add(new LCInstallation(executorPath, version));
-                                    }
+                                File executorFile = new File(path + "x64\\bin\\" + executor + ".exe");
+
+                                if (!executorFile.exists()) {
+                                    executorFile = new File(path + "bin\\" + executor + ".exe");
+                                }
+
+                                if (executorFile.exists()) {
+                                    result.add(new LCInstallation(executorFile.getPath(), version,
+                                            executorFile.length(), executorFile.lastModified()));
                                 }
                             }
                         } catch (JnaException e) {
@@ -131,16 +128,31 @@ public class LCInstallationsScanner implements Serializable {
 
     }
 
-    public List<LCInstallation> getInstallations() {
-        List<LCInstallation> result = null;
+    /**
+     * Scans the registry of the current machine. Must be called on the node.
+     */
+    static List<LCInstallation> scanLocal() {
+        List<LCInstallation> result = new ArrayList<LCInstallation>();
+        ScannerCallable.scanForInstallations(result, "LoadComplete");
+        return result;
+    }
 
-        try {
-            result = channel.call(new ScannerCallable());
-        } catch (Exception e) {
-            LCLog.error(listener, Messages.LCTestBuilder_RemoteCallingFailed(), e.getCause().getMessage());
+    /**
+     * Checks the executors of the current machine. Must be called on the node.
+     */
+    static boolean isUpToDateLocal(List<LCInstallation> installations) {
+        for (LCInstallation installation : installations) {
+            File executorFile = new File(installation.getExecutorPath());
+            if (executorFile.length() != installation.getExecutorSize() ||
+                    executorFile.lastModified() != installation.getExecutorLastModified()) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        return result != null ? result : new LinkedList<LCInstallation>();
+    public List<LCInstallation> scan() throws Exception {
+        return channel.call(new ScannerCallable());
     }
 
     public LCInstallation findInstallation(List<LCInstallation> installations, String executorVersion) {
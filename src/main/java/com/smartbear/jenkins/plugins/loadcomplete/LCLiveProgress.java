@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import net.sf.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ring buffer on the controller with the latest progress of a running test. The node fills it
+ * in batches; any number of viewers read from it, so they add nothing to the traffic from the node.
+ */
+public class LCLiveProgress implements LCProgressSink {
+
+    private static final String PROPERTY_PREFIX = LCLiveProgress.class.getName();
+
+    private static final int CAPACITY = Integer.getInteger(PROPERTY_PREFIX + ".capacity", 720);
+
+    // The mean response time is computed over the progress of this many last milliseconds. Each progress
+    // line carries an average already, so percentiles cannot be computed from them
+    private static final long RESPONSE_TIME_WINDOW = Long.getLong(PROPERTY_PREFIX + ".responseTimeWindow",
+            TimeUnit.MINUTES.toMillis(1));
+
+    private final String reportId;
+    private final String testName;
+
+    private final LCProgress[] samples = new LCProgress[Math.max(1, CAPACITY)];
+    private int head = 0;
+    private int size = 0;
+    private long version = 0;
+    private boolean finished = false;
+
+    public LCLiveProgress(String reportId, String testName) {
+        this.reportId = reportId;
+        this.testName = testName;
+    }
+
+    public String getReportId() {
+        return reportId;
+    }
+
+    public String getTestName() {
+        return testName;
+    }
+
+    public synchronized void publish(List<LCProgress> batch) {
+        for (LCProgress progress : batch) {
+            samples[head] = progress;
+            head = (head + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+        version++;
+        notifyAll();
+    }
+
+    synchronized void finish() {
+        finished = true;
+        version++;
+        notifyAll();
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Waits until the buffer changes.
+     *
+     * @param knownVersion the version the caller has already seen
+     * @return the current version; the same as the known one if the timeout elapsed
+     */
+    synchronized long awaitUpdate(long knownVersion, long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (version == knownVersion && !finished) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                break;
+            }
+            wait(remaining);
+        }
+        return version;
+    }
+
+    /**
+     * @return the latest progress and the mean of the reported response times over the last window
+     */
+    synchronized JSONObject toJson() {
+        JSONObject result = new JSONObject();
+        result.put("report", reportId);
+        result.put("test", testName);
+        result.put("finished", finished);
+
+        if (size == 0) {
+            return result;
+        }
+
+        LCProgress latest = samples[(head - 1 + samples.length) % samples.length];
+        result.put("elapsed", latest.getElapsed());
+        result.put("virtualUsers", latest.getVirtualUsers());
+        result.put("requestsPerSecond", latest.getRequestsPerSecond());
+        result.put("errors", latest.getErrors());
+        result.put("responseTime", latest.getResponseTime());
+
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            LCProgress progress = samples[(head - 1 - i + samples.length) % samples.length];
+            if (latest.getElapsed() - progress.getElapsed() > RESPONSE_TIME_WINDOW) {
+                break;
+            }
+            if (progress.getResponseTime() >= 0) {
+                sum += progress.getResponseTime();
+                count++;
+            }
+        }
+        if (count > 0) {
+            result.put("meanResponseTime", sum / count);
+        }
+        return result;
+    }
+
+}
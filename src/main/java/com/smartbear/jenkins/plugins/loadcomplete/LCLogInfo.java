@@ -74,11 +74,7 @@ public class LCLogInfo implements Serializable {
     }
 
     public String formatTestDuration() {
-        long timeInSeconds = testDuration / 1000;
-        long s = timeInSeconds % 60;
-        long m = (timeInSeconds / 60) % 60;
-        long h = timeInSeconds / (60 * 60);
-        return String.format("%d:%02d:%02d", h,m,s);
+        return Utils.formatDuration(testDuration);
     }
 
     public String getXML() {
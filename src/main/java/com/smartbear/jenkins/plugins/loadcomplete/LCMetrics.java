@@ -0,0 +1,311 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.Extension;
+import hudson.model.Node;
+import jenkins.model.NodeListener;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Operational metrics of the plugin on the controller, written in the Prometheus text format
+ * by {@link LCMetricsAction}. Updating a metric is a map lookup and a few atomic additions.
+ * <p>
+ * The series of a node are dropped when the node is deleted. A metric keeps at most a limited number
+ * of series; further label values are counted under "other", so that no metric grows without bound.
+ */
+public class LCMetrics {
+
+    static final String NODE_LOCK_WAIT = "loadcomplete_node_lock_wait_seconds";
+    static final String NODE_QUEUE_LENGTH = "loadcomplete_node_queue_length";
+    static final String NODE_SLOTS_IN_USE = "loadcomplete_node_slots_in_use";
+    static final String INSTALLATION_SCAN = "loadcomplete_installation_scan_seconds";
+    static final String TEST_RUN = "loadcomplete_test_run_seconds";
+    static final String TEST_RUNS = "loadcomplete_test_runs_total";
+    static final String ARTIFACT_BYTES = "loadcomplete_artifact_bytes_total";
+    static final String ARTIFACT_COMPRESSED_BYTES = "loadcomplete_artifact_compressed_bytes_total";
+    static final String ARTIFACT_TRANSFER = "loadcomplete_artifact_transfer_seconds";
+    static final String REPORT_REQUEST = "loadcomplete_report_request_seconds";
+    static final String REPORT_REQUESTS = "loadcomplete_report_requests_total";
+    static final String REPORT_ENTRIES = "loadcomplete_report_entries_served_total";
+    static final String ARCHIVE_CACHE_HITS = "loadcomplete_report_archive_cache_hits_total";
+    static final String ARCHIVE_CACHE_MISSES = "loadcomplete_report_archive_cache_misses_total";
+    static final String ARCHIVE_CACHE_COALESCED = "loadcomplete_report_archive_cache_coalesced_total";
+
+    private static final String COUNTER = "counter";
+    private static final String GAUGE = "gauge";
+    private static final String HISTOGRAM = "histogram";
+
+    // Label value of the series that collects the label combinations over the limit
+    static final String OTHER = "other";
+
+    private static final int MAX_SERIES = Integer.getInteger(LCMetrics.class.getName() + ".maxSeries", 200);
+
+    // Upper bounds of the histogram buckets, in seconds; from report requests to two-hour test runs
+    private static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60,
+            300, 900, 1800, 3600, 7200, 14400};
+
+    private static final LCMetrics INSTANCE = new LCMetrics(MAX_SERIES);
+
+    private final int maxSeries;
+    private final Map<String, String[]> descriptions = new TreeMap<String, String[]>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Object>> families =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Object>>();
+
+    /**
+     * @param maxSeries the number of series a metric keeps before further label values are counted as "other"
+     */
+    LCMetrics(int maxSeries) {
+        this.maxSeries = maxSeries;
+        describe(NODE_LOCK_WAIT, HISTOGRAM, "Time build steps waited for node slots.");
+        describe(NODE_QUEUE_LENGTH, GAUGE, "Build steps waiting for node slots.");
+        describe(NODE_SLOTS_IN_USE, GAUGE, "Node slots held by running build steps.");
+        describe(INSTALLATION_SCAN, HISTOGRAM, "Time spent on nodes checking or scanning LoadComplete installations.");
+        describe(TEST_RUN, HISTOGRAM, "Duration of test runner processes.");
+        describe(TEST_RUNS, COUNTER, "Finished test runner processes by exit code.");
+        describe(ARTIFACT_BYTES, COUNTER, "Report bytes transferred from nodes.");
+        describe(ARTIFACT_COMPRESSED_BYTES, COUNTER, "Report bytes transferred from nodes, as sent over the channel.");
+        describe(ARTIFACT_TRANSFER, HISTOGRAM, "Time spent transferring the reports of a test from the node.");
+        describe(REPORT_REQUEST, HISTOGRAM, "Time spent serving report requests.");
+        describe(REPORT_REQUESTS, COUNTER, "Report requests by result.");
+        describe(REPORT_ENTRIES, COUNTER, "Report archive entries served, by source.");
+        describe(ARCHIVE_CACHE_HITS, COUNTER, "Report archive cache hits.");
+        describe(ARCHIVE_CACHE_MISSES, COUNTER, "Report archive cache misses.");
+        describe(ARCHIVE_CACHE_COALESCED, COUNTER, "Report archive cache requests that joined an opening or read in progress.");
+    }
+
+    public static LCMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private void describe(String name, String type, String help) {
+        descriptions.put(name, new String[] {type, help});
+    }
+
+    /**
+     * @param labels label names and values, alternating
+     */
+    void increment(String name, long delta, String... labels) {
+        Object series = getSeries(name, labels);
+        ((AtomicLong) series).addAndGet(delta);
+    }
+
+    void observe(String name, long nanos, String... labels) {
+        Histogram histogram = (Histogram) getSeries(name, labels);
+        histogram.observe(nanos);
+    }
+
+    void observeMillis(String name, long millis, String... labels) {
+        observe(name, TimeUnit.MILLISECONDS.toNanos(millis), labels);
+    }
+
+    private Object getSeries(String name, String[] labels) {
+        ConcurrentMap<String, Object> family = families.get(name);
+        if (family == null) {
+            ConcurrentMap<String, Object> created = new ConcurrentHashMap<String, Object>();
+            family = families.putIfAbsent(name, created);
+            if (family == null) {
+                family = created;
+            }
+        }
+
+        String key = formatLabels(labels);
+        Object series = family.get(key);
+        if (series == null && family.size() >= maxSeries) {
+            key = formatLabels(getOtherLabels(labels));
+            series = family.get(key);
+        }
+        if (series == null) {
+            Object created = HISTOGRAM.equals(descriptions.get(name)[0]) ? new Histogram() : new AtomicLong();
+            series = family.putIfAbsent(key, created);
+            if (series == null) {
+                series = created;
+            }
+        }
+        return series;
+    }
+
+    private static String[] getOtherLabels(String[] labels) {
+        String[] result = labels.clone();
+        for (int i = 1; i < result.length; i += 2) {
+            result[i] = OTHER;
+        }
+        return result;
+    }
+
+    /**
+     * Drops the series that have the label, for example the ones of a deleted node.
+     */
+    void removeSeries(String labelName, String labelValue) {
+        String label = formatLabels(labelName, labelValue);
+        label = label.substring(1, label.length() - 1);
+        for (ConcurrentMap<String, Object> family : families.values()) {
+            Iterator<String> keys = family.keySet().iterator();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (key.startsWith("{" + label + ",") || key.startsWith("{" + label + "}") ||
+                        key.contains("," + label + ",") || key.endsWith("," + label + "}")) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    private static String formatLabels(String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\")
+                    .replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Writes all metrics, including the ones read from the node slots and the caches at this moment.
+     */
+    void write(PrintWriter writer) {
+        Map<String, Map<String, Object>> snapshot = new TreeMap<String, Map<String, Object>>();
+        for (Map.Entry<String, ConcurrentMap<String, Object>> family : families.entrySet()) {
+            snapshot.put(family.getKey(), new TreeMap<String, Object>(family.getValue()));
+        }
+
+        Map<String, Object> queueLengths = new TreeMap<String, Object>();
+        Map<String, Object> slotsInUse = new TreeMap<String, Object>();
+        for (Map.Entry<String, int[]> node : LCTestBuilder.getBusyNodes().getSlotUsage().entrySet()) {
+            String labels = formatLabels("node", node.getKey());
+            slotsInUse.put(labels, new AtomicLong(node.getValue()[0]));
+            queueLengths.put(labels, new AtomicLong(node.getValue()[1]));
+        }
+        snapshot.put(NODE_QUEUE_LENGTH, queueLengths);
+        snapshot.put(NODE_SLOTS_IN_USE, slotsInUse);
+
+        LCReportArchiveCache archiveCache = LCReportArchiveCache.getInstance();
+        snapshot.put(ARCHIVE_CACHE_HITS, singleValue(archiveCache.getHitCount()));
+        snapshot.put(ARCHIVE_CACHE_MISSES, singleValue(archiveCache.getMissCount()));
+        snapshot.put(ARCHIVE_CACHE_COALESCED, singleValue(archiveCache.getCoalescedCount()));
+
+        for (Map.Entry<String, String[]> description : descriptions.entrySet()) {
+            String name = description.getKey();
+            String type = description.getValue()[0];
+            writer.print("# HELP " + name + " " + description.getValue()[1] + "\n");
+            writer.print("# TYPE " + name + " " + type + "\n");
+
+            Map<String, Object> family = snapshot.get(name);
+            if (family == null) {
+                continue;
+            }
+            for (Map.Entry<String, Object> series : family.entrySet()) {
+                if (series.getValue() instanceof Histogram) {
+                    ((Histogram) series.getValue()).write(writer, name, series.getKey());
+                } else {
+                    writer.print(name + series.getKey() + " " + ((AtomicLong) series.getValue()).get() + "\n");
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private static Map<String, Object> singleValue(long value) {
+        Map<String, Object> result = new TreeMap<String, Object>();
+        result.put("", new AtomicLong(value));
+        return result;
+    }
+
+    /**
+     * Cumulative histogram of durations.
+     */
+    private static class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sumNanos = new AtomicLong();
+
+        void observe(long nanos) {
+            double seconds = nanos / 1e9;
+            int index = Arrays.binarySearch(BUCKETS, seconds);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            if (index < BUCKETS.length) {
+                buckets.incrementAndGet(index);
+            }
+            count.incrementAndGet();
+            sumNanos.addAndGet(Math.max(0, nanos));
+        }
+
+        void write(PrintWriter writer, String name, String labels) {
+            String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += buckets.get(i);
+                writer.print(name + "_bucket" + prefix + "le=\"" + formatBound(BUCKETS[i]) + "\"} " + cumulative + "\n");
+            }
+            long total = count.get();
+            writer.print(name + "_bucket" + prefix + "le=\"+Inf\"} " + Math.max(total, cumulative) + "\n");
+            writer.print(name + "_sum" + labels + " " + String.format(Locale.ENGLISH, "%.6f", sumNanos.get() / 1e9) + "\n");
+            writer.print(name + "_count" + labels + " " + Math.max(total, cumulative) + "\n");
+        }
+
+        private static String formatBound(double bound) {
+            return bound == Math.rint(bound) ? String.valueOf((long) bound) + ".0" : String.valueOf(bound);
+        }
+    }
+
+    @Extension
+    public static class NodeListenerImpl extends NodeListener {
+
+        @Override
+        protected void onUpdated(Node oldOne, Node newOne) {
+            if (!oldOne.getNodeName().equals(newOne.getNodeName())) {
+                getInstance().removeSeries("node", oldOne.getNodeName());
+            }
+        }
+
+        @Override
+        protected void onDeleted(Node node) {
+            getInstance().removeSeries("node", node.getNodeName());
+        }
+
+    }
+
+}
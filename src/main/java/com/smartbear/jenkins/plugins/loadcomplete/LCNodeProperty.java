@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.NodePropertyDescriptor;
+import hudson.util.FormValidation;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Number of LoadComplete slots a node offers to concurrently running test steps.
+ */
+public class LCNodeProperty extends NodeProperty<Node> {
+
+    public static final int DEFAULT_SLOTS = 1;
+
+    private final int slots;
+
+    @DataBoundConstructor
+    public LCNodeProperty(int slots) {
+        this.slots = slots > 0 ? slots : DEFAULT_SLOTS;
+    }
+
+    public int getSlots() {
+        return slots > 0 ? slots : DEFAULT_SLOTS;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends NodePropertyDescriptor {
+
+        public String getPluginUrl() {
+            return Constants.PLUGIN_URL;
+        }
+
+        public FormValidation doCheckSlots(@QueryParameter String value) {
+            try {
+                if (Integer.parseInt(value) > 0) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                // Do nothing
+            }
+            return FormValidation.error(Messages.LCTestBuilder_Descriptor_IsNotPositiveNumber());
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.LCNodeProperty_DisplayName();
+        }
+    }
+
+}
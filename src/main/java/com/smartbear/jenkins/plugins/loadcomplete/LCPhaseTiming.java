@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+
+/**
+ * The time a phase of the build step took, measured with a monotonic clock.
+ */
+@ExportedBean
+public class LCPhaseTiming implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String NODE_LOCK_WAIT = "nodeLockWait";
+    static final String OS_CHECK = "osCheck";
+    static final String INSTALLATION_SCAN = "installationScan";
+    static final String WORKSPACE_SETUP = "workspaceSetup";
+    static final String PROCESS_LAUNCH = "processLaunch";
+    static final String TEST_RUN = "testRun";
+    static final String ARTIFACT_TRANSFER = "artifactTransfer";
+    static final String POST_PROCESSING = "postProcessing";
+
+    private final String phase;
+    private final String detail;
+    private final long duration;
+
+    public LCPhaseTiming(String phase, String detail, long duration) {
+        this.phase = phase;
+        this.detail = detail;
+        this.duration = duration;
+    }
+
+    @Exported(name="phase")
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return what the phase worked on, such as the transferred file, or an empty string
+     */
+    @Exported(name="detail")
+    public String getDetail() {
+        return detail != null ? detail : "";
+    }
+
+    /**
+     * @return the duration in milliseconds
+     */
+    @Exported(name="duration")
+    public long getDuration() {
+        return duration;
+    }
+
+    public String formatDuration() {
+        return duration < 1000 ? duration + " ms" : Utils.formatDuration(duration);
+    }
+
+    public String getDisplayName() {
+        String name;
+        if (NODE_LOCK_WAIT.equals(phase)) {
+            name = Messages.LCPhaseTiming_NodeLockWait();
+        } else if (OS_CHECK.equals(phase)) {
+            name = Messages.LCPhaseTiming_OsCheck();
+        } else if (INSTALLATION_SCAN.equals(phase)) {
+            name = Messages.LCPhaseTiming_InstallationScan();
+        } else if (WORKSPACE_SETUP.equals(phase)) {
+            name = Messages.LCPhaseTiming_WorkspaceSetup();
+        } else if (PROCESS_LAUNCH.equals(phase)) {
+            name = Messages.LCPhaseTiming_ProcessLaunch();
+        } else if (TEST_RUN.equals(phase)) {
+            name = Messages.LCPhaseTiming_TestRun();
+        } else if (ARTIFACT_TRANSFER.equals(phase)) {
+            name = Messages.LCPhaseTiming_ArtifactTransfer();
+        } else if (POST_PROCESSING.equals(phase)) {
+            name = Messages.LCPhaseTiming_PostProcessing();
+        } else {
+            name = phase;
+        }
+        return getDetail().isEmpty() ? name : name + " (" + getDetail() + ")";
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import java.io.Serializable;
+
+/**
+ * The state of a running test as last reported by the test runner. Values the runner
+ * has not reported yet are negative.
+ */
+public class LCProgress implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long elapsed;
+    private final int virtualUsers;
+    private final double requestsPerSecond;
+    private final long errors;
+    private final long responseTime;
+
+    public LCProgress(long elapsed, int virtualUsers, double requestsPerSecond, long errors, long responseTime) {
+        this.elapsed = elapsed;
+        this.virtualUsers = virtualUsers;
+        this.requestsPerSecond = requestsPerSecond;
+        this.errors = errors;
+        this.responseTime = responseTime;
+    }
+
+    /**
+     * @return milliseconds since the test runner was launched
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    public int getVirtualUsers() {
+        return virtualUsers;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the current response time in milliseconds
+     */
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * @return this progress updated with the values known in the other one
+     */
+    LCProgress update(LCProgress other) {
+        return new LCProgress(other.elapsed,
+                other.virtualUsers >= 0 ? other.virtualUsers : virtualUsers,
+                other.requestsPerSecond >= 0 ? other.requestsPerSecond : requestsPerSecond,
+                other.errors >= 0 ? other.errors : errors,
+                other.responseTime >= 0 ? other.responseTime : responseTime);
+    }
+
+}
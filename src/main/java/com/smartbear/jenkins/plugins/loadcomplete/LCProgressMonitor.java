@@ -0,0 +1,285 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.model.TaskListener;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes progress lines in the test runner output on the node and writes them to the build log
+ * no more often than once per sampling interval, so a long run does not fill the log with them.
+ * Other lines pass through unchanged. With a sampling interval of 0 the monitor only checks the abort rules
+ * against the progress lines, and all lines are written as they are.
+ * <p>
+ * A progress line holds nothing but "name: number" pairs, optionally after a bracketed time stamp
+ * and a "Progress" label, for example "[12:00:05] Virtual users: 25, Requests/sec: 48.5, Errors: 0".
+ * The line pattern decides which lines are progress lines, so messages that merely mention errors
+ * or users are written as they are; the field patterns then pick the values out of the line.
+ * The patterns are read from system properties on the controller and travel to the node with the monitor.
+ */
+class LCProgressMonitor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String PROPERTY_PREFIX = LCProgressMonitor.class.getName();
+
+    private static final String LINE_PATTERN = System.getProperty(PROPERTY_PREFIX + ".linePattern",
+            "(?i)^\\s*(?:\\[[^\\]]*\\]\\s*)?(?:progress\\s*[:\\-]?\\s*)?" +
+                    "(?:[a-z][a-z /]*?\\s*[:=]\\s*\\d+(?:[.,]\\d+)?\\s*(?:ms|s)?\\s*(?:[,;|]\\s*|$))+$");
+    private static final String VIRTUAL_USERS_PATTERN = System.getProperty(PROPERTY_PREFIX + ".virtualUsersPattern",
+            "(?i)\\b(?:virtual\\s*users|vus?)\\s*[:=]\\s*(\\d+)");
+    private static final String REQUESTS_PATTERN = System.getProperty(PROPERTY_PREFIX + ".requestsPattern",
+            "(?i)\\b(?:requests?\\s*(?:/|per)\\s*s(?:ec(?:ond)?)?|req/s|rps)\\s*[:=]\\s*(\\d+(?:[.,]\\d+)?)");
+    private static final String ERRORS_PATTERN = System.getProperty(PROPERTY_PREFIX + ".errorsPattern",
+            "(?i)\\berrors?\\s*[:=]\\s*(\\d+)");
+    private static final String RESPONSE_TIME_PATTERN = System.getProperty(PROPERTY_PREFIX + ".responseTimePattern",
+            "(?i)\\bresponse\\s*time\\s*[:=]\\s*(\\d+(?:[.,]\\d+)?)\\s*(ms|s)?");
+
+    // Seconds between batches of progress sent to the controller
+    private static final long BATCH_INTERVAL = Long.getLong(PROPERTY_PREFIX + ".batchInterval", 5);
+
+    // Progress kept on the node while a batch cannot be sent
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final String linePattern;
+    private final String virtualUsersPattern;
+    private final String requestsPattern;
+    private final String errorsPattern;
+    private final String responseTimePattern;
+    private final long interval;
+    private final long batchInterval;
+    private LCProgressSink sink;
+    private ArrayList<LCAbortRule> abortRules;
+
+    private transient Pattern lineRegex;
+    private transient Pattern virtualUsersRegex;
+    private transient Pattern requestsRegex;
+    private transient Pattern errorsRegex;
+    private transient Pattern responseTimeRegex;
+
+    private transient LCProgress progress;
+    private transient long lastWritten;
+    private transient boolean pending;
+    private transient List<LCProgress> batch;
+    private transient long lastSent;
+    private transient List<LCProgress> history;
+    private transient volatile String abortReason;
+
+    /**
+     * @param interval sampling interval in seconds, 0 to write progress lines as they are
+     */
+    LCProgressMonitor(long interval) {
+        this.linePattern = LINE_PATTERN;
+        this.virtualUsersPattern = VIRTUAL_USERS_PATTERN;
+        this.requestsPattern = REQUESTS_PATTERN;
+        this.errorsPattern = ERRORS_PATTERN;
+        this.responseTimePattern = RESPONSE_TIME_PATTERN;
+        this.interval = TimeUnit.SECONDS.toNanos(interval);
+        this.batchInterval = TimeUnit.SECONDS.toNanos(BATCH_INTERVAL);
+    }
+
+    /**
+     * @return true if progress lines are written in samples, false if they are written as they are
+     */
+    boolean isSampling() {
+        return interval > 0;
+    }
+
+    /**
+     * Makes the monitor send the progress to the controller in batches.
+     *
+     * @param sink a proxy exported by the controller
+     */
+    synchronized void setSink(LCProgressSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Makes the monitor check the rules against the progress and request the test to stop when one fires.
+     */
+    void setAbortRules(List<LCAbortRule> abortRules) {
+        this.abortRules = new ArrayList<LCAbortRule>(abortRules);
+    }
+
+    /**
+     * @return why the test must be stopped, or null if no abort rule has fired
+     */
+    String getAbortReason() {
+        return abortReason;
+    }
+
+    /**
+     * Handles a line of the test runner output.
+     *
+     * @param elapsed milliseconds since the test runner was launched
+     * @return the updated progress, or null if the line is not a progress line and must be written as is
+     */
+    synchronized LCProgress processLine(String line, long elapsed) {
+        if (lineRegex == null) {
+            lineRegex = Pattern.compile(linePattern);
+            virtualUsersRegex = Pattern.compile(virtualUsersPattern);
+            requestsRegex = Pattern.compile(requestsPattern);
+            errorsRegex = Pattern.compile(errorsPattern);
+            responseTimeRegex = Pattern.compile(responseTimePattern);
+        }
+
+        if (!lineRegex.matcher(line).matches()) {
+            return null;
+        }
+
+        Matcher virtualUsers = virtualUsersRegex.matcher(line);
+        Matcher requests = requestsRegex.matcher(line);
+        boolean hasVirtualUsers = virtualUsers.find();
+        boolean hasRequests = requests.find();
+        if (!hasVirtualUsers && !hasRequests) {
+            return null;
+        }
+        Matcher errors = errorsRegex.matcher(line);
+        boolean hasErrors = errors.find();
+        Matcher responseTime = responseTimeRegex.matcher(line);
+        boolean hasResponseTime = responseTime.find();
+
+        try {
+            long responseTimeValue = -1;
+            if (hasResponseTime) {
+                double value = Double.parseDouble(responseTime.group(1).replace(',', '.'));
+                boolean seconds = responseTime.groupCount() > 1 && "s".equalsIgnoreCase(responseTime.group(2));
+                responseTimeValue = Math.round(seconds ? value * 1000 : value);
+            }
+            LCProgress update = new LCProgress(elapsed,
+                    hasVirtualUsers ? Integer.parseInt(virtualUsers.group(1)) : -1,
+                    hasRequests ? Double.parseDouble(requests.group(1).replace(',', '.')) : -1,
+                    hasErrors ? Long.parseLong(errors.group(1)) : -1,
+                    responseTimeValue);
+            progress = progress != null ? progress.update(update) : update;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (sink != null) {
+            if (batch == null) {
+                batch = new ArrayList<LCProgress>();
+            }
+            if (batch.size() >= MAX_BATCH_SIZE) {
+                batch.remove(0);
+            }
+            batch.add(progress);
+        }
+
+        if (abortRules != null && !abortRules.isEmpty() && abortReason == null) {
+            checkAbortRules();
+        }
+
+        pending = true;
+        return progress;
+    }
+
+    private void checkAbortRules() {
+        if (history == null) {
+            history = new ArrayList<LCProgress>();
+        }
+        history.add(progress);
+
+        // Keep the progress the longest rule needs, plus one before it as the start of the window
+        long longest = 0;
+        for (LCAbortRule rule : abortRules) {
+            longest = Math.max(longest, rule.getDuration());
+        }
+        int obsolete = 0;
+        while (obsolete + 1 < history.size() && progress.getElapsed() - history.get(obsolete + 1).getElapsed() > longest) {
+            obsolete++;
+        }
+        history.subList(0, obsolete).clear();
+
+        for (LCAbortRule rule : abortRules) {
+            Double actual = rule.check(history);
+            if (actual != null) {
+                abortReason = String.format(Messages.LCProgressMonitor_AbortRuleFired(), rule.getText(),
+                        String.format(Locale.ENGLISH, "%.2f", actual));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends the collected progress to the controller if the batch interval has passed since the last batch.
+     * A failed batch is kept and sent with the next one.
+     *
+     * @param force send the batch regardless of the interval
+     */
+    void sendProgress(long now, boolean force) {
+        LCProgressSink target;
+        List<LCProgress> toSend;
+        synchronized (this) {
+            target = sink;
+            if (target == null || batch == null || batch.isEmpty() ||
+                    (!force && lastSent != 0 && now - lastSent < batchInterval)) {
+                return;
+            }
+            lastSent = now;
+            toSend = new ArrayList<LCProgress>(batch);
+        }
+
+        try {
+            target.publish(toSend);
+        } catch (RuntimeException e) {
+            // The controller is not reachable, keep the batch
+            return;
+        }
+
+        synchronized (this) {
+            batch.subList(0, Math.min(toSend.size(), batch.size())).clear();
+        }
+    }
+
+    /**
+     * Writes the last progress if the sampling interval has passed since the previous one was written.
+     *
+     * @param force write the pending progress regardless of the interval
+     */
+    synchronized void writeProgress(TaskListener listener, long now, boolean force) {
+        if (!pending || (!force && lastWritten != 0 && now - lastWritten < interval)) {
+            return;
+        }
+        lastWritten = now;
+        pending = false;
+
+        LCLog.info(listener, Messages.LCProgressMonitor_Progress(),
+                Utils.formatDuration(progress.getElapsed()),
+                progress.getVirtualUsers() >= 0 ? String.valueOf(progress.getVirtualUsers()) : "?",
+                progress.getRequestsPerSecond() >= 0 ?
+                        String.format(Locale.ENGLISH, "%.1f", progress.getRequestsPerSecond()) : "?",
+                progress.getErrors() >= 0 ? String.valueOf(progress.getErrors()) : "?");
+    }
+
+}
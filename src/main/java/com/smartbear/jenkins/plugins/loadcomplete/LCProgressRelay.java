@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import java.util.List;
+
+/**
+ * The sink exported to the node for a single test run. It forwards the progress to the live progress
+ * of the run until it is closed; the channel keeps exported objects until the node drops the proxy,
+ * so only this relay, and not the progress buffer, stays reachable after the run.
+ */
+class LCProgressRelay implements LCProgressSink {
+
+    private volatile LCProgressSink target;
+
+    LCProgressRelay(LCProgressSink target) {
+        this.target = target;
+    }
+
+    public void publish(List<LCProgress> batch) {
+        LCProgressSink sink = target;
+        if (sink != null) {
+            sink.publish(batch);
+        }
+    }
+
+    /**
+     * Drops the target, later batches are ignored.
+     */
+    void close() {
+        target = null;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.Extension;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Project;
+import hudson.model.Queue;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import hudson.tasks.Builder;
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps projects with LoadComplete build steps in the queue until the node has enough free LoadComplete slots,
+ * so that waiting builds do not occupy executors.
+ */
+@Extension
+public class LCQueueTaskDispatcher extends QueueTaskDispatcher {
+
+    @Override
+    public CauseOfBlockage canTake(Node node, Queue.BuildableItem item) {
+        int weight = getRequiredSlots(item.task);
+        if (weight == 0) {
+            return null;
+        }
+
+        int capacity = Utils.getNodeSlots(node);
+        int freeSlots = LCTestBuilder.getBusyNodes().getFreeSlots(node);
+        if (freeSlots >= Math.min(weight, capacity)) {
+            return null;
+        }
+
+        return new NodeSlotsBusy(node, item, capacity - freeSlots, capacity);
+    }
+
+    static int getRequiredSlots(Queue.Task task) {
+        if (!(task instanceof Project)) {
+            return 0;
+        }
+
+        int result = 0;
+        for (Builder builder : ((Project<?, ?>) task).getBuilders()) {
+            if (builder instanceof LCTestBuilder) {
+                result = Math.max(result, ((LCTestBuilder) builder).getSlotWeight());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the LoadComplete items that have waited longer and can run on the same node.
+     */
+    private static int getQueuePosition(Node node, Queue.BuildableItem item) {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return 1;
+        }
+
+        int position = 1;
+        for (Queue.BuildableItem other : jenkins.getQueue().getBuildableItems()) {
+            if (other != item && other.getInQueueSince() < item.getInQueueSince() && canUse(other, node) &&
+                    getRequiredSlots(other.task) > 0) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    private static boolean canUse(Queue.Item item, Node node) {
+        Label label = item.getAssignedLabel();
+        return label != null ? label.contains(node) : node.getMode() == Node.Mode.NORMAL;
+    }
+
+    /**
+     * The queue position is only computed when the description is shown, {@link #canTake} is called
+     * for every node and every buildable item on each queue maintenance.
+     */
+    public static class NodeSlotsBusy extends CauseOfBlockage {
+
+        private final Node node;
+        private final Queue.BuildableItem item;
+        private final int inUse;
+        private final int capacity;
+
+        NodeSlotsBusy(Node node, Queue.BuildableItem item, int inUse, int capacity) {
+            this.node = node;
+            this.item = item;
+            this.inUse = inUse;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public String getShortDescription() {
+            return String.format(Messages.LCQueueTaskDispatcher_WaitingForNodeSlots(), node.getDisplayName(), inUse,
+                    capacity, getQueuePosition(node, item));
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+
+/**
+ * A statistic of a transaction that became worse than in the baseline by more than the allowed degree.
+ */
+@ExportedBean
+public class LCRegression implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String transaction;
+    private final String metric;
+    private final double baseline;
+    private final double current;
+
+    public LCRegression(String transaction, String metric, double baseline, double current) {
+        this.transaction = transaction;
+        this.metric = metric;
+        this.baseline = baseline;
+        this.current = current;
+    }
+
+    @Exported(name="transaction")
+    public String getTransaction() {
+        return transaction;
+    }
+
+    @Exported(name="metric")
+    public String getMetric() {
+        return metric;
+    }
+
+    @Exported(name="baseline")
+    public double getBaseline() {
+        return baseline;
+    }
+
+    @Exported(name="current")
+    public double getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return how much worse the value is, in percent of the baseline
+     */
+    @Exported(name="degradation")
+    public double getDegradation() {
+        if (baseline == 0) {
+            return 0;
+        }
+        double change = (current - baseline) / baseline * 100;
+        return LCRegressionGate.THROUGHPUT.equals(metric) ? -change : change;
+    }
+
+}
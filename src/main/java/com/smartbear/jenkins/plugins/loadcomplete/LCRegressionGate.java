@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the statistics of a test with the same test of a baseline build. Only the metrics files
+ * of the baseline builds are read, the report archives are not touched.
+ */
+class LCRegressionGate {
+
+    static final String P50 = "p50";
+    static final String P90 = "p90";
+    static final String P95 = "p95";
+    static final String P99 = "p99";
+    static final String THROUGHPUT = "throughput";
+
+    private static final String[] METRICS = {P50, P90, P95, P99, THROUGHPUT};
+
+    // Transactions with fewer samples are too noisy to be compared
+    private static final long MIN_SAMPLES = Long.getLong(LCRegressionGate.class.getName() + ".minSamples", 30);
+
+    // Rolling medians look this many times further back than the number of builds they need
+    private static final int SEARCH_DEPTH_FACTOR = 3;
+
+    private LCRegressionGate() {
+    }
+
+    /**
+     * Metric values of the baseline, per transaction.
+     */
+    static class Baseline {
+
+        private final String description;
+        private final double[] total;
+        private final Map<String, double[]> transactions;
+
+        Baseline(String description, double[] total, Map<String, double[]> transactions) {
+            this.description = description;
+            this.total = total;
+            this.transactions = transactions;
+        }
+
+        String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * @return null if there is no build with statistics of the test to compare with
+     */
+    static Baseline findBaseline(Run<?, ?> run, String testName, LCTestBuilder.RegressionBaseline type,
+                                 int pinnedBuild, int builds) {
+        if (type == LCTestBuilder.RegressionBaseline.LAST_SUCCESSFUL) {
+            Run<?, ?> build = run.getPreviousSuccessfulBuild();
+            LCReportMetrics metrics = build != null ? getMetrics(build, testName) : null;
+            return metrics != null ? createBaseline(String.format(Messages.LCRegressionGate_LastSuccessfulBaseline(),
+                    build.getNumber()), Arrays.asList(metrics)) : null;
+        }
+
+        if (type == LCTestBuilder.RegressionBaseline.PINNED) {
+            Job<?, ?> job = run.getParent();
+            Run<?, ?> build = job.getBuildByNumber(pinnedBuild);
+            LCReportMetrics metrics = build != null ? getMetrics(build, testName) : null;
+            return metrics != null ? createBaseline(String.format(Messages.LCRegressionGate_PinnedBaseline(),
+                    build.getNumber()), Arrays.asList(metrics)) : null;
+        }
+
+        if (type == LCTestBuilder.RegressionBaseline.ROLLING_MEDIAN) {
+            List<LCReportMetrics> found = new ArrayList<LCReportMetrics>();
+            int first = 0;
+            int last = 0;
+            int searched = 0;
+            for (Run<?, ?> build = run.getPreviousBuild(); build != null && found.size() < builds &&
+                    searched < builds * SEARCH_DEPTH_FACTOR; build = build.getPreviousBuild(), searched++) {
+                Result result = build.getResult();
+                if (result == null || result.isWorseThan(Result.UNSTABLE)) {
+                    continue;
+                }
+                LCReportMetrics metrics = getMetrics(build, testName);
+                if (metrics != null) {
+                    found.add(metrics);
+                    first = build.getNumber();
+                    last = last == 0 ? first : last;
+                }
+            }
+            return found.isEmpty() ? null : createBaseline(String.format(Messages.LCRegressionGate_MedianBaseline(),
+                    found.size(), first, last), found);
+        }
+
+        return null;
+    }
+
+    static List<LCRegression> compare(LCReportMetrics current, Baseline baseline, double threshold) {
+        List<LCRegression> regressions = new ArrayList<LCRegression>();
+        for (LCTransactionMetrics transaction : current.getTransactions()) {
+            compare(transaction, baseline.transactions.get(transaction.getName()), threshold, regressions);
+        }
+        compare(current.getTotal(), baseline.total, threshold, regressions);
+        return regressions;
+    }
+
+    private static void compare(LCTransactionMetrics current, double[] baseline, double threshold,
+                                List<LCRegression> regressions) {
+        if (baseline == null || current.getCount() < MIN_SAMPLES) {
+            return;
+        }
+
+        double[] values = getValues(current);
+        for (int i = 0; i < METRICS.length; i++) {
+            if (Double.isNaN(baseline[i]) || baseline[i] <= 0) {
+                continue;
+            }
+            LCRegression regression = new LCRegression(current.getName(), METRICS[i], baseline[i], values[i]);
+            if (regression.getDegradation() > threshold) {
+                regressions.add(regression);
+            }
+        }
+    }
+
+    private static LCReportMetrics getMetrics(Run<?, ?> build, String testName) {
+        LCSummaryAction summary = build.getAction(LCSummaryAction.class);
+        if (summary == null) {
+            return null;
+        }
+        for (LCReportAction report : summary.getReportsOrder()) {
+            if (report.getTestName().equals(testName) && report.getMetrics() != null) {
+                return report.getMetrics();
+            }
+        }
+        return null;
+    }
+
+    private static Baseline createBaseline(String description, List<LCReportMetrics> builds) {
+        List<double[]> totals = new ArrayList<double[]>();
+        Map<String, List<double[]>> transactions = new HashMap<String, List<double[]>>();
+
+        for (LCReportMetrics metrics : builds) {
+            totals.add(getValues(metrics.getTotal()));
+            for (LCTransactionMetrics transaction : metrics.getTransactions()) {
+                List<double[]> values = transactions.get(transaction.getName());
+                if (values == null) {
+                    values = new ArrayList<double[]>();
+                    transactions.put(transaction.getName(), values);
+                }
+                values.add(getValues(transaction));
+            }
+        }
+
+        Map<String, double[]> medians = new HashMap<String, double[]>();
+        for (Map.Entry<String, List<double[]>> entry : transactions.entrySet()) {
+            medians.put(entry.getKey(), median(entry.getValue()));
+        }
+        return new Baseline(description, median(totals), medians);
+    }
+
+    private static double[] getValues(LCTransactionMetrics metrics) {
+        return new double[]{metrics.getP50(), metrics.getP90(), metrics.getP95(), metrics.getP99(),
+                metrics.getThroughput()};
+    }
+
+    private static double[] median(List<double[]> values) {
+        double[] result = new double[METRICS.length];
+        double[] column = new double[values.size()];
+        for (int i = 0; i < METRICS.length; i++) {
+            for (int j = 0; j < values.size(); j++) {
+                column[j] = values.get(j)[i];
+            }
+            Arrays.sort(column);
+            int middle = column.length / 2;
+            result[i] = column.length % 2 == 1 ? column[middle] : (column[middle - 1] + column[middle]) / 2;
+        }
+        return result;
+    }
+
+}
@@ -31,7 +31,12 @@ import jenkins.model.Jenkins;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Igor Filin
@@ -56,7 +61,32 @@ public class LCReportAction implements Action, Serializable {
 
     private LCLogInfo logInfo = null;
 
+    private int slotWeight = 0;
+    private int nodeSlots = 0;
+    private int slotsInUse = 0;
+    private long slotWaitTime = 0;
+    private long preflightTime = 0;
+
+    private long transferredBytes = 0;
+    private long compressedBytes = 0;
+    private long transferTime = 0;
+
+    private String metricsFileName = "";
+    private String metricsError = "";
+
+    private List<LCSlaViolation> slaViolations = null;
+    private String slaNotEvaluated = "";
+
+    private List<LCPhaseTiming> phaseTimings = null;
+
+    private String abortReason = "";
+
+    private String regressionBaseline = "";
+    private List<LCRegression> regressions = null;
+
     private transient LCSummaryAction parent = null;
+    private transient LCReportMetrics metrics = null;
+    private transient boolean metricsUnavailable = false;
 
     public LCReportAction(Run<?, ?> run, String id, String testName, String agent) {
         this.id = id;
@@ -164,6 +194,184 @@ public class LCReportAction implements Action, Serializable {
         this.logInfo = logInfo;
     }
 
+    @Exported(name="slotWeight")
+    public int getSlotWeight() {
+        return slotWeight;
+    }
+
+    @Exported(name="nodeSlots")
+    public int getNodeSlots() {
+        return nodeSlots;
+    }
+
+    @Exported(name="slotsInUse")
+    public int getSlotsInUse() {
+        return slotsInUse;
+    }
+
+    @Exported(name="slotWaitTime")
+    public long getSlotWaitTime() {
+        return slotWaitTime;
+    }
+
+    public String formatSlotWaitTime() {
+        return Utils.formatDuration(slotWaitTime);
+    }
+
+    public void setSlotUsage(Utils.NodeSlotLease lease) {
+        if (lease != null) {
+            this.slotWeight = lease.getWeight();
+            this.nodeSlots = lease.getCapacity();
+            this.slotsInUse = lease.getInUse();
+            this.slotWaitTime = lease.getWaitTime();
+        }
+    }
+
+    @Exported(name="preflightTime")
+    public long getPreflightTime() {
+        return preflightTime;
+    }
+
+    public void setPreflightTime(long preflightTime) {
+        this.preflightTime = preflightTime;
+    }
+
+    @Exported(name="transferredBytes")
+    public long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    @Exported(name="compressedBytes")
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    @Exported(name="transferTime")
+    public long getTransferTime() {
+        return transferTime;
+    }
+
+    @Exported(name="compressionRatio")
+    public double getCompressionRatio() {
+        return compressedBytes > 0 ? (double) transferredBytes / compressedBytes : 0;
+    }
+
+    public void setTransferStats(long transferredBytes, long compressedBytes, long transferTime) {
+        this.transferredBytes = transferredBytes;
+        this.compressedBytes = compressedBytes;
+        this.transferTime = transferTime;
+    }
+
+    public String getMetricsFileName() {
+        return metricsFileName;
+    }
+
+    /**
+     * @return the statistics collected from the report data, read from the file next to the report on first use
+     */
+    @Exported(name="metrics", inline=true)
+    public synchronized LCReportMetrics getMetrics() {
+        if (metrics == null && hasMetrics() && !metricsUnavailable) {
+            File metricsFile = new File(run.getRootDir(), Constants.REPORTS_DIRECTORY_NAME +
+                    File.separator + metricsFileName);
+            try {
+                metrics = LCReportMetrics.load(metricsFile);
+            } catch (IOException e) {
+                // The file is missing or damaged, the report has no statistics then
+                metricsUnavailable = true;
+            }
+        }
+        return metrics;
+    }
+
+    public synchronized void setMetrics(String metricsFileName, LCReportMetrics metrics) {
+        this.metricsFileName = metricsFileName;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return why no statistics were collected from the report, empty if they were or if it is not known
+     */
+    @Exported(name="metricsError")
+    public String getMetricsError() {
+        return metricsError != null ? metricsError : "";
+    }
+
+    public void setMetricsError(String metricsError) {
+        this.metricsError = metricsError;
+    }
+
+    public boolean hasMetrics() {
+        return (metricsFileName != null && !metricsFileName.isEmpty());
+    }
+
+    /**
+     * @return the time the phases of the build step took, in the order they ran
+     */
+    @Exported(name="phaseTimings", inline=true)
+    public synchronized List<LCPhaseTiming> getPhaseTimings() {
+        return phaseTimings != null ? new ArrayList<LCPhaseTiming>(phaseTimings) :
+                Collections.<LCPhaseTiming>emptyList();
+    }
+
+    public synchronized void addPhaseTiming(String phase, String detail, long duration) {
+        if (phaseTimings == null) {
+            phaseTimings = new ArrayList<LCPhaseTiming>();
+        }
+        phaseTimings.add(new LCPhaseTiming(phase, detail, duration));
+    }
+
+    /**
+     * @return why the test was stopped early by an abort rule, empty if it was not
+     */
+    @Exported(name="abortReason")
+    public String getAbortReason() {
+        return abortReason != null ? abortReason : "";
+    }
+
+    public void setAbortReason(String abortReason) {
+        this.abortReason = abortReason;
+    }
+
+    @Exported(name="slaViolations", inline=true)
+    public List<LCSlaViolation> getSlaViolations() {
+        return slaViolations != null ? slaViolations : Collections.<LCSlaViolation>emptyList();
+    }
+
+    public void setSlaViolations(List<LCSlaViolation> slaViolations) {
+        this.slaViolations = new ArrayList<LCSlaViolation>(slaViolations);
+    }
+
+    /**
+     * @return why the threshold rules were not evaluated, empty if they were or if there are none
+     */
+    @Exported(name="slaNotEvaluated")
+    public String getSlaNotEvaluated() {
+        return slaNotEvaluated != null ? slaNotEvaluated : "";
+    }
+
+    public void setSlaNotEvaluated(String slaNotEvaluated) {
+        this.slaNotEvaluated = slaNotEvaluated;
+    }
+
+    /**
+     * @return the description of the build(s) the statistics were compared with, empty if they were not
+     */
+    @Exported(name="regressionBaseline")
+    public String getRegressionBaseline() {
+        return regressionBaseline;
+    }
+
+    @Exported(name="regressions", inline=true)
+    public List<LCRegression> getRegressions() {
+        return regressions != null ? regressions : Collections.<LCRegression>emptyList();
+    }
+
+    public void setRegressions(String regressionBaseline, List<LCRegression> regressions) {
+        this.regressionBaseline = regressionBaseline;
+        this.regressions = new ArrayList<LCRegression>(regressions);
+    }
+
     public LCSummaryAction getParent() {
         return parent;
     }
@@ -0,0 +1,421 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Bounded LRU cache of open report archives together with their entry indexes.
+ * The size of an archive is measured by the number of its entries.
+ */
+public class LCReportArchiveCache {
+
+    private static final String PROPERTY_PREFIX = LCReportArchiveCache.class.getName();
+
+    private static final int MAX_ARCHIVES = Integer.getInteger(PROPERTY_PREFIX + ".maxArchives", 32);
+    private static final long MAX_ENTRIES = Long.getLong(PROPERTY_PREFIX + ".maxEntries", 500000);
+    private static final long IDLE_TIMEOUT = Long.getLong(PROPERTY_PREFIX + ".idleTimeout",
+            TimeUnit.MINUTES.toMillis(10));
+    private static final long MAX_SHARED_ENTRY_SIZE = Long.getLong(PROPERTY_PREFIX + ".maxSharedEntrySize",
+            4 * 1024 * 1024);
+
+    private static final LCReportArchiveCache INSTANCE = new LCReportArchiveCache(MAX_ARCHIVES, MAX_ENTRIES);
+
+    private final int maxArchives;
+    private final long maxEntries;
+
+    // access-ordered, guarded by this
+    private final LinkedHashMap<String, Archive> archives = new LinkedHashMap<String, Archive>(16, 0.75f, true);
+    private long entryCount = 0;
+
+    // archives being opened, guarded by this
+    private final Map<String, FutureTask<Archive>> openings = new HashMap<String, FutureTask<Archive>>();
+    // entries being read, keyed by "<archive>!<entry>"
+    private final ConcurrentMap<String, FutureTask<byte[]>> readings = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    LCReportArchiveCache(int maxArchives, long maxEntries) {
+        this.maxArchives = maxArchives;
+        this.maxEntries = maxEntries;
+    }
+
+    public static LCReportArchiveCache getInstance() {
+        return INSTANCE;
+    }
+
+    public static class Archive {
+
+        private final String key;
+        private final ZipFile zipFile;
+        private final long lastModified;
+        private final long length;
+        private final Map<String, ZipEntry> entries;
+
+        private final FileChannel channel;
+        private final Map<String, LCZipDirectory.RawEntry> rawEntries;
+
+        // guarded by the cache
+        private int users = 0;
+        private boolean evicted = false;
+        private long lastAccess;
+
+        Archive(File file) throws IOException {
+            this.key = file.getAbsolutePath();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.zipFile = new ZipFile(file);
+
+            Map<String, ZipEntry> index = new HashMap<String, ZipEntry>();
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                String name = normalize(entry.getName());
+                if (!index.containsKey(name)) {
+                    index.put(name, entry);
+                }
+            }
+            this.entries = index;
+
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            Map<String, LCZipDirectory.RawEntry> rawIndex;
+            try {
+                rawIndex = LCZipDirectory.read(channel);
+            } catch (IOException e) {
+                // The entries will be served through ZipFile
+                rawIndex = Collections.emptyMap();
+            }
+            this.rawEntries = rawIndex;
+        }
+
+        static String normalize(String entryName) {
+            return entryName.replace('\\', '/').toUpperCase(Locale.ENGLISH);
+        }
+
+        boolean isUpToDate(File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+
+        public File getFile() {
+            return new File(key);
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Looks the entry up by its exact name, then ignoring the case and the kind of path separators.
+         */
+        public ZipEntry getEntry(String entryName) {
+            ZipEntry entry = zipFile.getEntry(entryName);
+            return entry != null ? entry : entries.get(normalize(entryName));
+        }
+
+        public Enumeration<? extends ZipEntry> entries() {
+            return zipFile.entries();
+        }
+
+        public InputStream getInputStream(ZipEntry entry) throws IOException {
+            return zipFile.getInputStream(entry);
+        }
+
+        /**
+         * @return the location of the still compressed entry data, or null if it is not known
+         */
+        LCZipDirectory.RawEntry getRawEntry(ZipEntry entry) {
+            return rawEntries.get(entry.getName());
+        }
+
+        /**
+         * @return the archive channel, to be used only with absolute positions
+         */
+        FileChannel getChannel() {
+            return channel;
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        void close() {
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                // Do nothing
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Do nothing
+            }
+        }
+    }
+
+    /**
+     * Returns an open archive for the file. Each call must be paired with {@link #release(Archive)}.
+     * Concurrent calls for an archive that is not open yet wait for a single thread to open it.
+     */
+    public Archive acquire(final File file) throws IOException {
+        String key = file.getAbsolutePath();
+
+        while (true) {
+            FutureTask<Archive> opening;
+            boolean opener = false;
+
+            synchronized (this) {
+                Archive archive = archives.get(key);
+                if (archive != null && archive.isUpToDate(file)) {
+                    hits.incrementAndGet();
+                    return use(archive);
+                }
+                if (archive != null) {
+                    remove(key);
+                }
+
+                opening = openings.get(key);
+                if (opening == null) {
+                    opening = new FutureTask<Archive>(new Callable<Archive>() {
+                        public Archive call() throws IOException {
+                            return new Archive(file);
+                        }
+                    });
+                    openings.put(key, opening);
+                    opener = true;
+                }
+            }
+
+            if (!opener) {
+                coalesced.incrementAndGet();
+                // The opener has put the archive into the cache, or failed
+                getResult(opening);
+                continue;
+            }
+
+            misses.incrementAndGet();
+            opening.run();
+            synchronized (this) {
+                openings.remove(key);
+                Archive created = getResult(opening);
+                archives.put(key, created);
+                entryCount += created.size();
+                use(created);
+                evictOverflow();
+                return created;
+            }
+        }
+    }
+
+    /**
+     * Reads the whole entry. Concurrent calls for the same entry share a single read.
+     */
+    public byte[] readEntry(final Archive archive, final ZipEntry entry) throws IOException {
+        String key = archive.key + "!" + entry.getName();
+        FutureTask<byte[]> reading = new FutureTask<byte[]>(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                InputStream input = archive.getInputStream(entry);
+                try {
+                    return IOUtils.toByteArray(input);
+                } finally {
+                    input.close();
+                }
+            }
+        });
+
+        FutureTask<byte[]> current = readings.putIfAbsent(key, reading);
+        if (current != null) {
+            coalesced.incrementAndGet();
+            return getResult(current);
+        }
+
+        try {
+            reading.run();
+            return getResult(reading);
+        } finally {
+            readings.remove(key, reading);
+        }
+    }
+
+    private static <T> T getResult(FutureTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public synchronized void release(Archive archive) {
+        archive.users--;
+        if (archive.evicted && archive.users == 0) {
+            archive.close();
+        }
+    }
+
+    private Archive use(Archive archive) {
+        archive.users++;
+        archive.lastAccess = System.currentTimeMillis();
+        return archive;
+    }
+
+    private void remove(String key) {
+        Archive archive = archives.remove(key);
+        if (archive != null) {
+            entryCount -= archive.size();
+            archive.evicted = true;
+            if (archive.users == 0) {
+                archive.close();
+            }
+        }
+    }
+
+    private void evictOverflow() {
+        // the most recently used archive is never evicted
+        while (archives.size() > 1 && (archives.size() > maxArchives || entryCount > maxEntries)) {
+            remove(archives.keySet().iterator().next());
+        }
+    }
+
+    public synchronized void evictIdle() {
+        long deadline = System.currentTimeMillis() - IDLE_TIMEOUT;
+        List<String> idle = new ArrayList<String>();
+        for (Archive archive : archives.values()) {
+            if (archive.lastAccess < deadline) {
+                idle.add(archive.key);
+            }
+        }
+        for (String key : idle) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Closes all archives located in the directory, for example before a build is deleted.
+     */
+    public synchronized void evictDirectory(File directory) {
+        String prefix = directory.getAbsolutePath() + File.separator;
+        List<String> keys = new ArrayList<String>();
+        for (String key : archives.keySet()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+
+    public synchronized int getArchiveCount() {
+        return archives.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of requests that waited for an archive or entry loaded for another request
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the largest entry that is read into memory to be shared between concurrent requests
+     */
+    public long getMaxSharedEntrySize() {
+        return MAX_SHARED_ENTRY_SIZE;
+    }
+
+    @Extension
+    public static class IdleEviction extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() {
+            getInstance().evictIdle();
+        }
+
+    }
+
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            getInstance().evictDirectory(run.getRootDir());
+        }
+
+    }
+
+}
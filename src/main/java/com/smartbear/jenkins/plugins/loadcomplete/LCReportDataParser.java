@@ -0,0 +1,504 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Collects response time statistics from the "data/report.data*" entries of a report archive.
+ * <p>
+ * The entries are JavaScript files holding the report data as object literals. They are read
+ * with a tolerant streaming tokenizer that skips any code around the literals and keeps only the
+ * current path of nested objects in memory, so archives with millions of samples are processed
+ * with bounded memory. Only the innermost objects with a response time field that are elements of
+ * an array are taken as samples: an object held in a field describes the test or a transaction, and
+ * an object that encloses other samples, or that has a field of an aggregate such as a count or
+ * an average, is a summary of samples reported elsewhere and is not counted again. The transaction
+ * name of a sample is the name field of the object or of the nearest enclosing object.
+ * The recognized field names can be changed with system properties.
+ * <p>
+ * The layout of the report data is not documented, and the parser has been checked only against data
+ * modelled on the report pages, not against report data of a real run. Until it is, the statistics are
+ * for information only: the threshold rules and the regression check do not decide the build result
+ * unless the statistics are marked as verified with a system property.
+ */
+class LCReportDataParser {
+
+    private static final String PROPERTY_PREFIX = LCReportDataParser.class.getName();
+
+    private static final Set<String> NAME_KEYS = getKeys("nameKeys", "name,transaction,request,page");
+    private static final Set<String> RESPONSE_TIME_KEYS = getKeys("responseTimeKeys",
+            "responsetime,response_time,duration,elapsed");
+    private static final Set<String> TIMESTAMP_KEYS = getKeys("timestampKeys", "timestamp,starttime,start_time");
+    private static final Set<String> ERROR_KEYS = getKeys("errorKeys", "error,iserror,failed");
+    private static final Set<String> SUCCESS_KEYS = getKeys("successKeys", "success,passed");
+    private static final Set<String> VIRTUAL_USER_KEYS = getKeys("virtualUserKeys", "virtualuser,vu,vuid,userid");
+    private static final Set<String> AGGREGATE_KEYS = getKeys("aggregateKeys",
+            "count,samples,hits,min,max,avg,average,mean,median,sum,total,percentile,p50,p90,p95,p99");
+
+    // Response times are multiplied by this factor to get milliseconds
+    private static final double RESPONSE_TIME_SCALE = Double.parseDouble(
+            System.getProperty(PROPERTY_PREFIX + ".responseTimeScale", "1"));
+
+    static final String VERIFIED_PROPERTY = PROPERTY_PREFIX + ".verified";
+
+    private static final boolean VERIFIED = Boolean.getBoolean(VERIFIED_PROPERTY);
+
+    private static final String DATA_ENTRY_PREFIX = "DATA/REPORT.DATA";
+    private static final String TOTAL_NAME = "Total";
+    private static final String OTHER_TRANSACTIONS_NAME = "(other)";
+    private static final String UNNAMED_TRANSACTION_NAME = "(unnamed)";
+
+    private static final int MAX_TRANSACTIONS = 1000;
+    private static final int MAX_VIRTUAL_USERS = 10000;
+    private static final int MAX_STRING_LENGTH = 256;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Map<String, Accumulator> transactions = new LinkedHashMap<String, Accumulator>();
+    private final Accumulator total = new Accumulator();
+
+    private LCReportDataParser() {
+    }
+
+    /**
+     * @return true if the statistics may decide the build result, see {@link #VERIFIED_PROPERTY}
+     */
+    static boolean isVerified() {
+        return VERIFIED;
+    }
+
+    /**
+     * @param info the times of the run; its duration is used for the throughput if the samples have no timestamps
+     */
+    static LCReportMetrics parse(File archive, LCLogInfo info) throws IOException {
+        LCReportDataParser parser = new LCReportDataParser();
+
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+            List<ZipEntry> dataEntries = new ArrayList<ZipEntry>();
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                if (!entry.isDirectory() &&
+                        LCReportArchiveCache.Archive.normalize(entry.getName()).startsWith(DATA_ENTRY_PREFIX)) {
+                    dataEntries.add(entry);
+                }
+            }
+            // report.data, report.data1, report.data2, ... in this order
+            Collections.sort(dataEntries, new Comparator<ZipEntry>() {
+                public int compare(ZipEntry first, ZipEntry second) {
+                    int byLength = first.getName().length() - second.getName().length();
+                    return byLength != 0 ? byLength : first.getName().compareTo(second.getName());
+                }
+            });
+
+            for (ZipEntry entry : dataEntries) {
+                Reader reader = new InputStreamReader(new BufferedInputStream(zipFile.getInputStream(entry)),
+                        Charset.forName(Constants.DEFAULT_CHARSET_NAME));
+                try {
+                    new Tokenizer(reader, parser).run();
+                } finally {
+                    reader.close();
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+
+        return parser.getMetrics(info.getStartTime(), info.getTestDuration());
+    }
+
+    private LCReportMetrics getMetrics(long startTime, long testDuration) {
+        List<LCTransactionMetrics> result = new ArrayList<LCTransactionMetrics>();
+        for (Map.Entry<String, Accumulator> entry : transactions.entrySet()) {
+            result.add(entry.getValue().toMetrics(entry.getKey(), testDuration));
+        }
+        return new LCReportMetrics(result, total.toMetrics(TOTAL_NAME, testDuration), startTime);
+    }
+
+    private void addSample(String name, Frame sample) {
+        if (name == null) {
+            name = UNNAMED_TRANSACTION_NAME;
+        }
+
+        Accumulator accumulator = transactions.get(name);
+        if (accumulator == null) {
+            if (transactions.size() >= MAX_TRANSACTIONS) {
+                name = OTHER_TRANSACTIONS_NAME;
+                accumulator = transactions.get(name);
+            }
+            if (accumulator == null) {
+                accumulator = new Accumulator();
+                transactions.put(name, accumulator);
+            }
+        }
+
+        accumulator.add(sample);
+        total.add(sample);
+    }
+
+    private static Set<String> getKeys(String property, String defaultKeys) {
+        String keys = System.getProperty(PROPERTY_PREFIX + "." + property, defaultKeys);
+        Set<String> result = new HashSet<String>();
+        for (String key : Arrays.asList(keys.split(","))) {
+            if (!key.trim().isEmpty()) {
+                result.add(key.trim().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        return result;
+    }
+
+    private static class Accumulator {
+
+        private final LCHistogram histogram = new LCHistogram();
+        private long errors = 0;
+        private long firstTimestamp = Long.MAX_VALUE;
+        private long lastTimestamp = Long.MIN_VALUE;
+        private final Set<String> virtualUsers = new HashSet<String>();
+
+        void add(Frame sample) {
+            long responseTime = Math.round(sample.responseTime * RESPONSE_TIME_SCALE);
+            histogram.record(responseTime);
+
+            if (sample.error) {
+                errors++;
+            }
+            if (!Double.isNaN(sample.timestamp)) {
+                long timestamp = (long) sample.timestamp;
+                firstTimestamp = Math.min(firstTimestamp, timestamp);
+                lastTimestamp = Math.max(lastTimestamp, timestamp + responseTime);
+            }
+            if (sample.virtualUser != null && virtualUsers.size() < MAX_VIRTUAL_USERS) {
+                virtualUsers.add(sample.virtualUser);
+            }
+        }
+
+        LCTransactionMetrics toMetrics(String name, long testDuration) {
+            long duration = lastTimestamp > firstTimestamp ? lastTimestamp - firstTimestamp : testDuration;
+            return new LCTransactionMetrics(name, histogram, errors, duration, virtualUsers.size());
+        }
+    }
+
+    /**
+     * An object or an array being read. Only the fields of a sample are kept.
+     */
+    private static class Frame {
+
+        final boolean object;
+        final Frame parent;
+
+        boolean expectKey = true;
+        String key = null;
+
+        String name = null;
+        double responseTime = Double.NaN;
+        double timestamp = Double.NaN;
+        boolean error = false;
+        String virtualUser = null;
+        boolean aggregate = false;
+        boolean enclosesSamples = false;
+
+        Frame(boolean object, Frame parent) {
+            this.object = object;
+            this.parent = parent;
+        }
+
+        void setValue(Object value) {
+            if (key == null) {
+                return;
+            }
+            String field = key.toLowerCase(Locale.ENGLISH);
+            key = null;
+
+            if (AGGREGATE_KEYS.contains(field)) {
+                aggregate = true;
+            } else if (NAME_KEYS.contains(field) && value instanceof String) {
+                name = (String) value;
+            } else if (RESPONSE_TIME_KEYS.contains(field) && value instanceof Double) {
+                responseTime = (Double) value;
+            } else if (TIMESTAMP_KEYS.contains(field) && value instanceof Double) {
+                timestamp = (Double) value;
+            } else if (ERROR_KEYS.contains(field)) {
+                error = isTrue(value);
+            } else if (SUCCESS_KEYS.contains(field)) {
+                error = !isTrue(value);
+            } else if (VIRTUAL_USER_KEYS.contains(field) && value != null) {
+                virtualUser = value instanceof Double ? Long.toString(((Double) value).longValue()) : value.toString();
+            }
+        }
+
+        String getTransactionName() {
+            for (Frame frame = this; frame != null; frame = frame.parent) {
+                if (frame.name != null) {
+                    return frame.name;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isTrue(Object value) {
+            if (value instanceof Boolean) {
+                return (Boolean) value;
+            }
+            if (value instanceof Double) {
+                return (Double) value != 0;
+            }
+            if (value instanceof String) {
+                String string = (String) value;
+                return !string.isEmpty() && !string.equalsIgnoreCase("false") && !string.equals("0");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reads JSON-like literals (quoted or bare keys, single or double quoted strings, comments)
+     * and passes the samples to the parser. Anything outside the literals is skipped.
+     */
+    private static class Tokenizer {
+
+        private final Reader reader;
+        private final LCReportDataParser parser;
+        private final StringBuilder buffer = new StringBuilder();
+        private final char[] input = new char[READ_BUFFER_SIZE];
+        private int inputPosition = 0;
+        private int inputLength = 0;
+
+        private Frame current = null;
+        private int pushedBack = -2;
+
+        Tokenizer(Reader reader, LCReportDataParser parser) {
+            this.reader = reader;
+            this.parser = parser;
+        }
+
+        void run() throws IOException {
+            int c;
+            while ((c = next()) >= 0) {
+                switch (c) {
+                    case '{':
+                    case '[':
+                        if (current != null && current.object && current.expectKey) {
+                            // Not valid here, the literal is broken; start over
+                            current = null;
+                        }
+                        current = new Frame(c == '{', current);
+                        break;
+                    case '}':
+                    case ']':
+                        close(c == '}');
+                        break;
+                    case ',':
+                        if (current != null) {
+                            current.expectKey = current.object;
+                            current.key = null;
+                        }
+                        break;
+                    case ':':
+                        break;
+                    case '"':
+                    case '\'':
+                        token(readString(c));
+                        break;
+                    case '/':
+                        skipComment();
+                        break;
+                    default:
+                        if (c == '-' || c == '.' || Character.isDigit(c)) {
+                            token(readNumber(c));
+                        } else if (Character.isJavaIdentifierStart(c)) {
+                            String word = readWord(c);
+                            if (current != null && current.object && current.expectKey) {
+                                token(word);
+                            } else if (word.equals("true") || word.equals("false")) {
+                                token(Boolean.valueOf(word));
+                            } else {
+                                token(null);
+                            }
+                        }
+                        break;
+                }
+            }
+        }
+
+        private void token(Object value) {
+            if (current == null) {
+                return;
+            }
+            if (current.object && current.expectKey) {
+                current.key = value instanceof String ? (String) value : null;
+                current.expectKey = false;
+            } else if (current.object) {
+                current.setValue(value);
+            }
+        }
+
+        private void close(boolean object) {
+            // Unbalanced brackets close the frames up to the matching one
+            while (current != null && current.object != object) {
+                current = current.parent;
+            }
+            if (current == null) {
+                return;
+            }
+
+            Frame closed = current;
+            current = closed.parent;
+            boolean timed = closed.object && !Double.isNaN(closed.responseTime);
+            if (timed && current != null && !current.object && !closed.aggregate && !closed.enclosesSamples) {
+                parser.addSample(closed.getTransactionName(), closed);
+            }
+            if (current != null) {
+                current.key = null;
+                if (timed || closed.enclosesSamples) {
+                    current.enclosesSamples = true;
+                }
+            }
+        }
+
+        private String readString(int quote) throws IOException {
+            buffer.setLength(0);
+            int c;
+            while ((c = next()) >= 0 && c != quote) {
+                if (c == '\\') {
+                    c = next();
+                    if (c < 0) {
+                        break;
+                    }
+                    switch (c) {
+                        case 'n': c = '\n'; break;
+                        case 't': c = '\t'; break;
+                        case 'r': c = '\r'; break;
+                        case 'b': c = '\b'; break;
+                        case 'f': c = '\f'; break;
+                        case 'u': c = readUnicodeEscape(); break;
+                        default: break;
+                    }
+                }
+                if (buffer.length() < MAX_STRING_LENGTH) {
+                    buffer.append((char) c);
+                }
+            }
+            return buffer.toString();
+        }
+
+        private int readUnicodeEscape() throws IOException {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(next(), 16);
+                if (digit < 0) {
+                    return '?';
+                }
+                value = value * 16 + digit;
+            }
+            return value;
+        }
+
+        private Double readNumber(int first) throws IOException {
+            buffer.setLength(0);
+            buffer.append((char) first);
+            int c;
+            while ((c = next()) >= 0 && (Character.isDigit(c) || c == '.' || c == 'e' || c == 'E' ||
+                    c == '+' || c == '-')) {
+                if (buffer.length() < MAX_STRING_LENGTH) {
+                    buffer.append((char) c);
+                }
+            }
+            pushBack(c);
+            try {
+                return Double.valueOf(buffer.toString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private String readWord(int first) throws IOException {
+            buffer.setLength(0);
+            buffer.append((char) first);
+            int c;
+            while ((c = next()) >= 0 && Character.isJavaIdentifierPart(c)) {
+                if (buffer.length() < MAX_STRING_LENGTH) {
+                    buffer.append((char) c);
+                }
+            }
+            pushBack(c);
+            return buffer.toString();
+        }
+
+        private void skipComment() throws IOException {
+            int c = next();
+            if (c == '/') {
+                while ((c = next()) >= 0 && c != '\n') {
+                    // skip
+                }
+            } else if (c == '*') {
+                int previous = 0;
+                while ((c = next()) >= 0 && !(previous == '*' && c == '/')) {
+                    previous = c;
+                }
+            } else {
+                pushBack(c);
+            }
+        }
+
+        private int next() throws IOException {
+            if (pushedBack != -2) {
+                int c = pushedBack;
+                pushedBack = -2;
+                return c;
+            }
+            if (inputPosition == inputLength) {
+                inputLength = reader.read(input);
+                inputPosition = 0;
+                if (inputLength <= 0) {
+                    inputLength = 0;
+                    return -1;
+                }
+            }
+            return input[inputPosition++];
+        }
+
+        private void pushBack(int c) {
+            pushedBack = c;
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics collected from the report data of a test run. They are kept in a small binary
+ * file next to the report archive ("id.metrics"), so they can be read without the archive.
+ */
+@ExportedBean
+public class LCReportMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int FILE_SIGNATURE = 0x4C434D54; // "LCMT"
+    private static final int FILE_VERSION = 3;
+
+    private final List<LCTransactionMetrics> transactions;
+    private final LCTransactionMetrics total;
+    private final long startTime;
+
+    public LCReportMetrics(List<LCTransactionMetrics> transactions, LCTransactionMetrics total) {
+        this(transactions, total, 0);
+    }
+
+    /**
+     * @param startTime the wall-clock time the test run started at, 0 if not known
+     */
+    public LCReportMetrics(List<LCTransactionMetrics> transactions, LCTransactionMetrics total, long startTime) {
+        this.transactions = Collections.unmodifiableList(new ArrayList<LCTransactionMetrics>(transactions));
+        this.total = total;
+        this.startTime = startTime;
+    }
+
+    @Exported(name="transactions", inline=true)
+    public List<LCTransactionMetrics> getTransactions() {
+        return transactions;
+    }
+
+    @Exported(name="total", inline=true)
+    public LCTransactionMetrics getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the wall-clock time the test run started at, 0 if not known or if the metrics are combined
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public LCTransactionMetrics getTransaction(String name) {
+        for (LCTransactionMetrics transaction : transactions) {
+            if (transaction.getName().equals(name)) {
+                return transaction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Merges the statistics of several tests of a build by transaction name. Percentiles of the result
+     * are computed from the merged histograms, not averaged. The tests may have run one after another
+     * or at the same time, see {@link LCTransactionMetrics#combine}.
+     */
+    public static LCReportMetrics combine(List<LCReportMetrics> metrics) {
+        Map<String, List<LCTransactionMetrics>> byName = new LinkedHashMap<String, List<LCTransactionMetrics>>();
+        Map<String, List<Long>> startTimesByName = new LinkedHashMap<String, List<Long>>();
+        List<LCTransactionMetrics> totals = new ArrayList<LCTransactionMetrics>();
+        List<Long> totalStartTimes = new ArrayList<Long>();
+        String totalName = "";
+
+        for (LCReportMetrics reportMetrics : metrics) {
+            for (LCTransactionMetrics transaction : reportMetrics.transactions) {
+                List<LCTransactionMetrics> list = byName.get(transaction.getName());
+                if (list == null) {
+                    list = new ArrayList<LCTransactionMetrics>();
+                    byName.put(transaction.getName(), list);
+                    startTimesByName.put(transaction.getName(), new ArrayList<Long>());
+                }
+                list.add(transaction);
+                startTimesByName.get(transaction.getName()).add(reportMetrics.startTime);
+            }
+            totals.add(reportMetrics.total);
+            totalStartTimes.add(reportMetrics.startTime);
+            totalName = reportMetrics.total.getName();
+        }
+
+        List<LCTransactionMetrics> transactions = new ArrayList<LCTransactionMetrics>();
+        for (Map.Entry<String, List<LCTransactionMetrics>> entry : byName.entrySet()) {
+            transactions.add(LCTransactionMetrics.combine(entry.getKey(), entry.getValue(),
+                    startTimesByName.get(entry.getKey())));
+        }
+        return new LCReportMetrics(transactions, LCTransactionMetrics.combine(totalName, totals, totalStartTimes));
+    }
+
+    public boolean isEmpty() {
+        return total.getCount() == 0;
+    }
+
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            output.writeInt(FILE_SIGNATURE);
+            output.writeInt(FILE_VERSION);
+            output.writeLong(startTime);
+            output.writeInt(transactions.size());
+            for (LCTransactionMetrics transaction : transactions) {
+                transaction.write(output);
+            }
+            total.write(output);
+        } finally {
+            output.close();
+        }
+
+        if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException(String.format(Messages.LCArtifactTransfer_UnableToRename(), temp, file));
+        }
+    }
+
+    public static LCReportMetrics load(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (input.readInt() != FILE_SIGNATURE) {
+                throw new IOException(Messages.LCReportMetrics_InvalidFile());
+            }
+            int version = input.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException(Messages.LCReportMetrics_InvalidFile());
+            }
+
+            long startTime = input.readLong();
+            int count = input.readInt();
+            if (count < 0) {
+                throw new IOException(Messages.LCReportMetrics_InvalidFile());
+            }
+            List<LCTransactionMetrics> transactions = new ArrayList<LCTransactionMetrics>();
+            for (int i = 0; i < count; i++) {
+                transactions.add(LCTransactionMetrics.read(input));
+            }
+            LCTransactionMetrics total = LCTransactionMetrics.read(input);
+            return new LCReportMetrics(transactions, total, startTime);
+        } finally {
+            input.close();
+        }
+    }
+
+}
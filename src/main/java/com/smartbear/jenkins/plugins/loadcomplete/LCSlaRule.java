@@ -0,0 +1,239 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An absolute threshold for a statistic of a transaction, written as one line of text:
+ * <pre>
+ *   [transaction] metric operator value [unit]
+ * </pre>
+ * For example, "Login p95 &lt; 800 ms", "error rate &lt; 0.5%" or "throughput &gt; 200 req/s".
+ * Rules without a transaction name apply to the totals of the test.
+ */
+class LCSlaRule {
+
+    static final String MEAN = "mean";
+    static final String MIN = "min";
+    static final String MAX = "max";
+    static final String ERROR_RATE = "error rate";
+    static final String ERRORS = "errors";
+    static final String THROUGHPUT = "throughput";
+
+    private static final Pattern RULE_PATTERN = Pattern.compile(
+            "^(?:\"([^\"]+)\"|(.*?))\\s*\\b(p\\d{1,2}(?:\\.\\d+)?|mean|avg|average|min|max|error\\s*rate|errors|" +
+                    "throughput)\\s*(<=|>=|<|>)\\s*(\\d+(?:\\.\\d+)?)\\s*(ms|s|sec|%|req/s|/s|rps|req/min|/min)?\\s*$",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final String COMMENT_PREFIX = "#";
+
+    private final String text;
+    private final String transaction;
+    private final String metric;
+    private final double percentile;
+    private final String operator;
+    private final double threshold;
+
+    private LCSlaRule(String text, String transaction, String metric, double percentile, String operator,
+                      double threshold) {
+        this.text = text;
+        this.transaction = transaction;
+        this.metric = metric;
+        this.percentile = percentile;
+        this.operator = operator;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return null if the text is not a valid rule
+     */
+    static LCSlaRule parse(String text) {
+        String line = text.trim();
+        Matcher matcher = RULE_PATTERN.matcher(line);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        String transaction = matcher.group(1) != null ? matcher.group(1) : matcher.group(2).trim();
+        String metric = matcher.group(3).toLowerCase(Locale.ENGLISH).replaceAll("\\s+", " ");
+        String operator = matcher.group(4);
+        double threshold = Double.parseDouble(matcher.group(5));
+        String unit = matcher.group(6) != null ? matcher.group(6).toLowerCase(Locale.ENGLISH) : "";
+        double percentile = 0;
+
+        if (metric.startsWith("p")) {
+            percentile = Double.parseDouble(metric.substring(1));
+            if (percentile <= 0 || percentile >= 100) {
+                return null;
+            }
+        } else if (metric.equals("avg") || metric.equals("average")) {
+            metric = MEAN;
+        } else if (metric.replace(" ", "").equals("errorrate")) {
+            metric = ERROR_RATE;
+        }
+
+        boolean isTime = percentile > 0 || metric.equals(MEAN) || metric.equals(MIN) || metric.equals(MAX);
+        if (isTime) {
+            if (unit.equals("s") || unit.equals("sec")) {
+                threshold *= 1000;
+            } else if (!unit.isEmpty() && !unit.equals("ms")) {
+                return null;
+            }
+        } else if (metric.equals(ERROR_RATE)) {
+            if (!unit.isEmpty() && !unit.equals("%")) {
+                return null;
+            }
+        } else if (metric.equals(THROUGHPUT)) {
+            if (unit.endsWith("/min")) {
+                threshold /= 60;
+            } else if (!unit.isEmpty() && !unit.endsWith("/s") && !unit.equals("rps")) {
+                return null;
+            }
+        } else if (!unit.isEmpty()) {
+            return null;
+        }
+
+        return new LCSlaRule(line, transaction, metric, percentile, operator, threshold);
+    }
+
+    /**
+     * Parses rules written one per line. Empty lines and lines starting with "#" are skipped.
+     *
+     * @return null if any of the lines is not a valid rule
+     */
+    static List<LCSlaRule> parseAll(String text) {
+        List<LCSlaRule> rules = new ArrayList<LCSlaRule>();
+        for (String line : getRuleLines(text)) {
+            LCSlaRule rule = parse(line);
+            if (rule == null) {
+                return null;
+            }
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    /**
+     * @return the trimmed lines of the text that are neither empty nor comments
+     */
+    static List<String> getRuleLines(String text) {
+        List<String> lines = new ArrayList<String>();
+        if (text == null) {
+            return lines;
+        }
+        for (String line : text.split("\\r?\\n")) {
+            if (!line.trim().isEmpty() && !line.trim().startsWith(COMMENT_PREFIX)) {
+                lines.add(line.trim());
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return the 1-based number of the first line that is not a valid rule, 0 if all of them are valid
+     */
+    static int findInvalidLine(String text) {
+        String[] lines = text.split("\\r?\\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (!line.isEmpty() && !line.startsWith(COMMENT_PREFIX) && parse(line) == null) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    /**
+     * @return an empty string if the rule applies to the totals
+     */
+    String getTransaction() {
+        return transaction;
+    }
+
+    String getMetric() {
+        return metric;
+    }
+
+    double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return the violation of the rule, or null if the rule holds or the transaction was not found
+     */
+    LCSlaViolation check(LCReportMetrics metrics) {
+        LCTransactionMetrics target = transaction.isEmpty() ? metrics.getTotal() : metrics.getTransaction(transaction);
+        if (target == null) {
+            return null;
+        }
+
+        double actual = getValue(target);
+        boolean holds;
+        if (operator.equals("<")) {
+            holds = actual < threshold;
+        } else if (operator.equals("<=")) {
+            holds = actual <= threshold;
+        } else if (operator.equals(">")) {
+            holds = actual > threshold;
+        } else {
+            holds = actual >= threshold;
+        }
+
+        return holds ? null : new LCSlaViolation(text, target.getName(), metric, operator, threshold, actual);
+    }
+
+    private double getValue(LCTransactionMetrics target) {
+        if (percentile > 0) {
+            return target.getHistogram().getValueAtPercentile(percentile);
+        }
+        if (metric.equals(MEAN)) {
+            return target.getMean();
+        }
+        if (metric.equals(MIN)) {
+            return target.getMin();
+        }
+        if (metric.equals(MAX)) {
+            return target.getMax();
+        }
+        if (metric.equals(ERROR_RATE)) {
+            return target.getErrorRate() * 100;
+        }
+        if (metric.equals(ERRORS)) {
+            return target.getErrors();
+        }
+        return target.getThroughput();
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+
+/**
+ * A threshold rule that the statistics of a test run did not meet, or that could not be checked.
+ * Response times are in milliseconds, error rates in percent and throughput in samples per second.
+ */
+@ExportedBean
+public class LCSlaViolation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String rule;
+    private final String transaction;
+    private final String metric;
+    private final String operator;
+    private final double threshold;
+    private final double actual;
+    private final String reason;
+
+    public LCSlaViolation(String rule, String transaction, String metric, String operator, double threshold,
+                          double actual) {
+        this.rule = rule;
+        this.transaction = transaction;
+        this.metric = metric;
+        this.operator = operator;
+        this.threshold = threshold;
+        this.actual = actual;
+        this.reason = null;
+    }
+
+    /**
+     * A rule that could not be checked, which fails the check like a violated one.
+     */
+    public LCSlaViolation(String rule, String transaction, String reason) {
+        this.rule = rule;
+        this.transaction = transaction;
+        this.metric = "";
+        this.operator = "";
+        this.threshold = Double.NaN;
+        this.actual = Double.NaN;
+        this.reason = reason;
+    }
+
+    @Exported(name="rule")
+    public String getRule() {
+        return rule;
+    }
+
+    @Exported(name="transaction")
+    public String getTransaction() {
+        return transaction;
+    }
+
+    @Exported(name="metric")
+    public String getMetric() {
+        return metric;
+    }
+
+    @Exported(name="operator")
+    public String getOperator() {
+        return operator;
+    }
+
+    @Exported(name="threshold")
+    public double getThreshold() {
+        return threshold;
+    }
+
+    @Exported(name="actual")
+    public double getActual() {
+        return actual;
+    }
+
+    /**
+     * @return why the rule could not be checked, or null if it was checked and did not hold
+     */
+    @Exported(name="reason")
+    public String getReason() {
+        return reason;
+    }
+
+}
@@ -27,11 +27,19 @@ package com.smartbear.jenkins.plugins.loadcomplete;
 import hudson.model.Action;
 import hudson.model.Api;
 import hudson.model.Run;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Igor Filin
@@ -39,6 +47,15 @@ import java.util.*;
 @ExportedBean
 public class LCSummaryAction implements Action {
 
+    private static final String PROPERTY_PREFIX = LCSummaryAction.class.getName();
+
+    // Each live viewer holds a request thread for as long as it watches
+    private static final int MAX_LIVE_VIEWERS = Integer.getInteger(PROPERTY_PREFIX + ".maxLiveViewers", 32);
+    private static final long KEEP_ALIVE_INTERVAL = TimeUnit.SECONDS.toMillis(15);
+    private static final long MAX_LIVE_STREAM_DURATION = TimeUnit.HOURS.toNanos(1);
+    private static final long RETRY_AFTER_SECONDS = 5;
+    private static final Semaphore LIVE_VIEWER_PERMITS = new Semaphore(MAX_LIVE_VIEWERS);
+
     private final Run<?, ?> run;
 
     private LinkedHashMap<String, LCReportAction> reports = new LinkedHashMap<String, LCReportAction>();
@@ -46,6 +63,9 @@ public class LCSummaryAction implements Action {
     private ArrayList<LCReportAction> reportsOrder = new ArrayList<LCReportAction>();
     private final LCDynamicReportAction dynamic;
 
+    private transient LCReportMetrics combinedMetrics;
+    private transient Map<String, LCLiveProgress> liveProgress;
+
     LCSummaryAction(Run<?, ?> run) {
         this.run = run;
         String buildDir = run.getRootDir().getAbsolutePath();
@@ -74,9 +94,52 @@ public class LCSummaryAction implements Action {
             report.setParent(this);
             reports.put(report.getId(), report);
             reportsOrder.add(report);
+            synchronized (this) {
+                combinedMetrics = null;
+            }
         }
     }
 
+    /**
+     * @return statistics of all tests of the build merged together, or null if no test has statistics
+     */
+    @Exported(name="combinedMetrics", inline=true)
+    public synchronized LCReportMetrics getCombinedMetrics() {
+        if (combinedMetrics == null) {
+            List<LCReportMetrics> metrics = new ArrayList<LCReportMetrics>();
+            for (LCReportAction report : reportsOrder) {
+                LCReportMetrics reportMetrics = report.getMetrics();
+                if (reportMetrics != null) {
+                    metrics.add(reportMetrics);
+                }
+            }
+            if (!metrics.isEmpty()) {
+                combinedMetrics = LCReportMetrics.combine(metrics);
+            }
+        }
+        return combinedMetrics;
+    }
+
+    /**
+     * @return false if the statistics are for information only, see {@link LCReportDataParser#isVerified()}
+     */
+    public boolean isMetricsVerified() {
+        return LCReportDataParser.isVerified();
+    }
+
+    /**
+     * @return the number of tests whose statistics are included in {@link #getCombinedMetrics()}
+     */
+    public int getMetricsCount() {
+        int count = 0;
+        for (LCReportAction report : reportsOrder) {
+            if (report.hasMetrics()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     @Exported(name="reports", inline = true)
     public ArrayList<LCReportAction> getReportsOrder() {
         return reportsOrder;
@@ -108,6 +171,98 @@ public class LCSummaryAction implements Action {
         return reportsOrder.get(index - 1);
     }
 
+    private synchronized Map<String, LCLiveProgress> getLiveProgressMap() {
+        if (liveProgress == null) {
+            liveProgress = new ConcurrentHashMap<String, LCLiveProgress>();
+        }
+        return liveProgress;
+    }
+
+    /**
+     * Creates the buffer that receives the progress of a test that is about to start.
+     */
+    LCLiveProgress startLiveProgress(String reportId, String testName) {
+        LCLiveProgress progress = new LCLiveProgress(reportId, testName);
+        getLiveProgressMap().put(reportId, progress);
+        return progress;
+    }
+
+    void finishLiveProgress(String reportId) {
+        LCLiveProgress progress = getLiveProgressMap().remove(reportId);
+        if (progress != null) {
+            progress.finish();
+        }
+    }
+
+    /**
+     * @return the tests of the build that are running now
+     */
+    public List<LCLiveProgress> getLiveProgress() {
+        return new ArrayList<LCLiveProgress>(getLiveProgressMap().values());
+    }
+
+    /**
+     * Streams the progress of a running test as server-sent events. The test is chosen with
+     * the "report" parameter; without it the first running test is streamed. The stream ends
+     * with an "end" event when the test finishes.
+     */
+    public void doLive(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        String reportId = req.getParameter("report");
+        LCLiveProgress progress = null;
+        if (reportId != null) {
+            progress = getLiveProgressMap().get(reportId);
+        } else if (!getLiveProgressMap().isEmpty()) {
+            progress = getLiveProgress().get(0);
+        }
+
+        if (progress == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        if (!LIVE_VIEWER_PERMITS.tryAcquire()) {
+            rsp.setHeader("Retry-After", Long.toString(RETRY_AFTER_SECONDS));
+            rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        try {
+            rsp.setContentType("text/event-stream;charset=UTF-8");
+            rsp.setHeader("Cache-Control", "no-cache");
+            rsp.setHeader("X-Accel-Buffering", "no");
+            PrintWriter writer = rsp.getWriter();
+            writer.print("retry: " + TimeUnit.SECONDS.toMillis(RETRY_AFTER_SECONDS) + "\n\n");
+
+            long version = -1;
+            long deadline = System.nanoTime() + MAX_LIVE_STREAM_DURATION;
+            while (System.nanoTime() < deadline) {
+                long current = progress.awaitUpdate(version, KEEP_ALIVE_INTERVAL);
+                if (current != version) {
+                    version = current;
+                    writer.print("id: " + version + "\nevent: progress\ndata: " + progress.toJson() + "\n\n");
+                } else {
+                    writer.print(": keep-alive\n\n");
+                }
+
+                if (progress.isFinished()) {
+                    writer.print("event: end\ndata: {}\n\n");
+                    writer.flush();
+                    break;
+                }
+
+                writer.flush();
+                if (writer.checkError()) {
+                    // The viewer has gone
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            LIVE_VIEWER_PERMITS.release();
+        }
+    }
+
     public LCDynamicReportAction getDynamic() {
         return dynamic;
     }
@@ -44,7 +44,13 @@ import javax.annotation.Nonnull;
 import javax.servlet.ServletException;
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -61,6 +67,8 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
     private static final String TEST_ARG = "/test:";
     private static final String FORCE_CONVERSION_ARG = "/ForceConversion";
 
+    private static final int DEFAULT_PROGRESS_INTERVAL = 30;
+
     private static final String DEBUG_FLAG_NAME = "LOADCOMPLETE_PLUGIN_DEBUG";
     private boolean DEBUG = false;
 
@@ -71,6 +79,16 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
     private String actionOnErrors;
     private boolean useTimeout;
     private String timeout;
+    private int slotWeight;
+    private String regressionBaseline;
+    private String baselineBuild;
+    private int baselineBuilds;
+    private String regressionThreshold;
+    private String actionOnRegression;
+    private String slaRules;
+    private String actionOnSlaViolation;
+    private int progressInterval;
+    private String abortRules;
 
     private boolean generatePDF;
     private boolean generateMHT;
@@ -81,8 +99,19 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
         MAKE_FAILED
     }
 
+    public enum RegressionBaseline {
+        NONE,
+        LAST_SUCCESSFUL,
+        PINNED,
+        ROLLING_MEDIAN
+    }
+
     private static Utils.BusyNodeList busyNodes = new Utils.BusyNodeList();
 
+    static Utils.BusyNodeList getBusyNodes() {
+        return busyNodes;
+    }
+
     @DataBoundConstructor
     public LCTestBuilder(String project, String test) {
         this.project = project != null ? project : "";
@@ -92,6 +121,16 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
         this.actionOnErrors = BuildStepAction.MAKE_UNSTABLE.toString();
         this.useTimeout = false;
         this.timeout = "";
+        this.slotWeight = 1;
+        this.regressionBaseline = RegressionBaseline.NONE.name();
+        this.baselineBuild = "";
+        this.baselineBuilds = 5;
+        this.regressionThreshold = "10";
+        this.actionOnRegression = BuildStepAction.MAKE_UNSTABLE.name();
+        this.slaRules = "";
+        this.actionOnSlaViolation = BuildStepAction.MAKE_FAILED.name();
+        this.progressInterval = DEFAULT_PROGRESS_INTERVAL;
+        this.abortRules = "";
 
         this.generatePDF = true;
         this.generateMHT = false;
@@ -160,6 +199,99 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
         return timeout;
     }
 
+    @DataBoundSetter
+    public void setSlotWeight(int slotWeight) {
+        this.slotWeight = slotWeight;
+    }
+
+    public int getSlotWeight() {
+        return slotWeight > 0 ? slotWeight : 1;
+    }
+
+    @DataBoundSetter
+    public void setRegressionBaseline(String regressionBaseline) {
+        this.regressionBaseline = regressionBaseline;
+    }
+
+    public String getRegressionBaseline() {
+        return regressionBaseline != null ? regressionBaseline : RegressionBaseline.NONE.name();
+    }
+
+    @DataBoundSetter
+    public void setBaselineBuild(String baselineBuild) {
+        this.baselineBuild = baselineBuild;
+    }
+
+    public String getBaselineBuild() {
+        return baselineBuild != null ? baselineBuild : "";
+    }
+
+    @DataBoundSetter
+    public void setBaselineBuilds(int baselineBuilds) {
+        this.baselineBuilds = baselineBuilds;
+    }
+
+    public int getBaselineBuilds() {
+        return baselineBuilds > 0 ? baselineBuilds : 5;
+    }
+
+    @DataBoundSetter
+    public void setRegressionThreshold(String regressionThreshold) {
+        this.regressionThreshold = regressionThreshold;
+    }
+
+    public String getRegressionThreshold() {
+        return regressionThreshold != null ? regressionThreshold : "10";
+    }
+
+    @DataBoundSetter
+    public void setActionOnRegression(String actionOnRegression) {
+        this.actionOnRegression = actionOnRegression;
+    }
+
+    public String getActionOnRegression() {
+        return actionOnRegression != null ? actionOnRegression : BuildStepAction.MAKE_UNSTABLE.name();
+    }
+
+    /**
+     * @param progressInterval seconds between progress lines in the build log, 0 to copy the test runner output as is
+     */
+    @DataBoundSetter
+    public void setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    @DataBoundSetter
+    public void setAbortRules(String abortRules) {
+        this.abortRules = abortRules;
+    }
+
+    public String getAbortRules() {
+        return abortRules != null ? abortRules : "";
+    }
+
+    @DataBoundSetter
+    public void setSlaRules(String slaRules) {
+        this.slaRules = slaRules;
+    }
+
+    public String getSlaRules() {
+        return slaRules != null ? slaRules : "";
+    }
+
+    @DataBoundSetter
+    public void setActionOnSlaViolation(String actionOnSlaViolation) {
+        this.actionOnSlaViolation = actionOnSlaViolation;
+    }
+
+    public String getActionOnSlaViolation() {
+        return actionOnSlaViolation != null ? actionOnSlaViolation : BuildStepAction.MAKE_FAILED.name();
+    }
+
     @DataBoundSetter
     public void setGeneratePDF(boolean generatePDF) {
         this.generatePDF = generatePDF;
@@ -190,17 +322,17 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
                         @Nonnull TaskListener taskListener) throws InterruptedException, IOException {
 
         Node currentNode = run.getExecutor().getOwner().getNode();
-        busyNodes.lock(currentNode, taskListener);
+        Utils.NodeSlotLease lease = busyNodes.lock(currentNode, getSlotWeight(), taskListener);
 
         try {
-            performInternal(run, filePath, launcher, taskListener);
+            performInternal(run, filePath, launcher, taskListener, lease);
         } finally {
-            busyNodes.release(currentNode);
+            busyNodes.release(currentNode, lease);
         }
     }
 
-    public boolean performInternal(Run<?, ?> run, FilePath filePath, Launcher launcher, TaskListener listener)
-            throws IOException, InterruptedException {
+    public boolean performInternal(Run<?, ?> run, FilePath filePath, Launcher launcher, TaskListener listener,
+                                   Utils.NodeSlotLease lease) throws IOException, InterruptedException {
 
         final PrintStream logger = listener.getLogger();
         logger.println();
@@ -229,7 +361,25 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
 
         LCLog.info(listener, Messages.LCTestBuilder_TestStartedMessage(), testDisplayName);
 
-        if (!Utils.isWindows(launcher.getChannel(), listener)) {
+        // Probing the node: OS, installations and workspace are checked in a single remote call
+        long preflightStartTime = System.nanoTime();
+
+        final String nodeName = run.getExecutor().getOwner().getName();
+        final LCInstallationsCache installationsCache = LCInstallationsCache.getInstance();
+
+        final LCAgentProbe.Result probe;
+        try {
+            probe = launcher.getChannel().call(new LCAgentProbe(filePath != null ? filePath.getRemote() : null,
+                    installationsCache.getFresh(nodeName)));
+        } catch (Exception e) {
+            LCLog.error(listener, Messages.LCTestBuilder_RemoteCallingFailed(),
+                    e.getCause() == null ? e.toString() : e.getCause().toString());
+            LCLog.info(listener, Messages.LCTestBuilder_MarkingBuildAsFailed());
+            run.setResult(Result.FAILURE);
+            return false;
+        }
+
+        if (!probe.isWindows()) {
             LCLog.error(listener, Messages.LCTestBuilder_NotWindowsOS());
             LCLog.info(listener, Messages.LCTestBuilder_MarkingBuildAsFailed());
             run.setResult(Result.FAILURE);
@@ -238,8 +388,12 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
 
         // Search for required LC installation
 
-        final LCInstallationsScanner scanner = new LCInstallationsScanner(launcher.getChannel(), listener);
-        List<LCInstallation> installations = scanner.getInstallations();
+        List<LCInstallation> installations = probe.getInstallations();
+        LCMetrics.getInstance().observeMillis(LCMetrics.INSTALLATION_SCAN, probe.getInstallationScanTime(),
+                "result", probe.isInstallationsUpToDate() ? "cached" : "scanned");
+        if (!probe.isInstallationsUpToDate()) {
+            installationsCache.put(nodeName, installations);
+        }
 
         StringBuilder msgBuilder = new StringBuilder();
         msgBuilder.append(Messages.LCTestBuilder_FoundedInstallations());
@@ -249,6 +403,7 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
 
         LCLog.info(listener, msgBuilder.toString());
 
+        final LCInstallationsScanner scanner = new LCInstallationsScanner(launcher.getChannel(), listener);
         final LCInstallation chosenInstallation = scanner.findInstallation(installations, getExecutorVersion());
 
         if (chosenInstallation == null) {
@@ -268,9 +423,16 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
         LCLog.info(listener, Messages.LCTestBuilder_ChosenInstallation() + "\n\t" + chosenInstallation);
 
         // Generating  paths
+        if (probe.getWorkspaceError() != null) {
+            LCLog.error(listener, Messages.LCTestBuilder_ExceptionOccurred(), probe.getWorkspaceError());
+            LCLog.info(listener, Messages.LCTestBuilder_MarkingBuildAsFailed());
+            run.setResult(Result.FAILURE);
+            return false;
+        }
+
         final Workspace workspace;
         try {
-            workspace = new Workspace(run, filePath);
+            workspace = new Workspace(run, new FilePath(launcher.getChannel(), probe.getWorkspacePath()), false);
         } catch (IOException e) {
             LCLog.error(listener, Messages.LCTestBuilder_ExceptionOccurred(), e.toString());
             LCLog.info(listener, Messages.LCTestBuilder_MarkingBuildAsFailed());
@@ -278,40 +440,82 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
             return false;
         }
 
+        long preflightTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - preflightStartTime);
+        LCLog.info(listener, Messages.LCTestBuilder_PreflightFinished(), preflightTime,
+                probe.getUsableDiskSpace() / (1024 * 1024));
+
         // Making the command line
         ArgumentListBuilder args = makeCommandLineArgs(run, launcher, listener, workspace, chosenInstallation);
 
         // Launching and data processing
         final LCReportAction LCReportAction = new LCReportAction(run, workspace.getLogId(), testDisplayName,
                 run.getExecutor().getOwner().getNode().getDisplayName());
+        LCReportAction.setSlotUsage(lease);
+        LCReportAction.setPreflightTime(preflightTime);
+        LCReportAction.addPhaseTiming(LCPhaseTiming.NODE_LOCK_WAIT, null, lease != null ? lease.getWaitTime() : 0);
+        LCReportAction.addPhaseTiming(LCPhaseTiming.OS_CHECK, null, probe.getOsCheckTime());
+        LCReportAction.addPhaseTiming(LCPhaseTiming.INSTALLATION_SCAN, null, probe.getInstallationScanTime());
+        LCReportAction.addPhaseTiming(LCPhaseTiming.WORKSPACE_SETUP, null, probe.getWorkspaceSetupTime());
 
         int exitCode = -2;
         boolean result = false;
+        long postProcessingStart = 0;
+        long transferTime = 0;
+        LCProgressRelay progressRelay = null;
 
-        Proc process = null;
         try {
             LCLog.info(listener, Messages.LCTestBuilder_LaunchingTestRunner());
 
-
             long timeout = getTimeoutValue(null, env);
-            long startTime = Utils.getSystemTime(launcher.getChannel(), listener);
-
-            Launcher.ProcStarter processStarter = launcher.launch().cmds(args).envs(run.getEnvironment(listener));
 
-            process = processStarter.start();
+            List<String> expectedFiles = new ArrayList<String>();
+            expectedFiles.add(workspace.getSlaveErrorFilePath().getRemote());
+            expectedFiles.add(workspace.getSlaveZIPFilePath().getRemote());
+            expectedFiles.add(workspace.getSlavePDFFilePath().getRemote());
+            expectedFiles.add(workspace.getSlaveMHTFilePath().getRemote());
+
+            LCTestRunner runner = new LCTestRunner(args.toCommandArray(), run.getEnvironment(listener),
+                    workspace.getSlaveWorkspacePath().getRemote(), timeout, expectedFiles, listener);
+            List<LCAbortRule> rules = LCAbortRule.parseAll(getAbortRules());
+            if (rules == null) {
+                LCLog.warning(listener, Messages.LCTestBuilder_InvalidAbortRules(),
+                        LCAbortRule.findInvalidLine(getAbortRules()));
+                rules = Collections.emptyList();
+            }
+            // The abort rules are checked against the progress lines also when they are not sampled
+            if (getProgressInterval() > 0 || !rules.isEmpty()) {
+                LCProgressMonitor monitor = new LCProgressMonitor(getProgressInterval());
+                if (getProgressInterval() > 0) {
+                    LCLiveProgress liveProgress = getOrCreateAction(run).startLiveProgress(LCReportAction.getId(),
+                            testDisplayName);
+                    progressRelay = new LCProgressRelay(liveProgress);
+                    monitor.setSink(launcher.getChannel().export(LCProgressSink.class, progressRelay));
+                }
+                monitor.setAbortRules(rules);
+                runner.setProgressMonitor(monitor);
+            }
 
-            if (timeout == -1) {
-                exitCode = process.join();
-            } else {
-                exitCode = process.joinWithTimeout(timeout, TimeUnit.SECONDS, listener);
+            LCTestRunner.Result runResult = launcher.getChannel().call(runner);
+            postProcessingStart = System.nanoTime();
+            exitCode = runResult.getExitCode();
+            LCMetrics.getInstance().observeMillis(LCMetrics.TEST_RUN, runResult.getDuration());
+            LCMetrics.getInstance().increment(LCMetrics.TEST_RUNS, 1, "exit_code", String.valueOf(exitCode));
+            LCReportAction.addPhaseTiming(LCPhaseTiming.PROCESS_LAUNCH, null, runResult.getLaunchTime());
+            LCReportAction.addPhaseTiming(LCPhaseTiming.TEST_RUN, null,
+                    runResult.getDuration() - runResult.getLaunchTime());
+
+            if (runResult.isTimedOut()) {
+                LCLog.warning(listener, Messages.LCTestBuilder_TestTimedOut(), timeout);
             }
-            process = null;
 
-            long stopTime = Utils.getSystemTime(launcher.getChannel(), listener);
+            if (runResult.getAbortReason() != null) {
+                LCLog.warning(listener, Messages.LCTestBuilder_TestStoppedByRule(), runResult.getAbortReason());
+                LCReportAction.setAbortReason(runResult.getAbortReason());
+            }
 
             LCLog.info(listener, Messages.LCTestBuilder_ExitCodeMessage(), exitCode);
 
-            processFiles(listener, workspace, LCReportAction, startTime, stopTime, exitCode);
+            processFiles(run.getExecutor().getOwner(), listener, workspace, LCReportAction, runResult);
 
             if (exitCode == 0) {
                 result = true;
@@ -337,6 +541,14 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
                     run.setResult(Result.FAILURE);
                 }
             }
+
+            if (!checkSlaRules(run, listener, LCReportAction)) {
+                result = false;
+            }
+
+            if (!checkRegressions(run, listener, LCReportAction)) {
+                result = false;
+            }
         } catch (InterruptedException e) {
             // The build has been aborted. Let Jenkins mark it as ABORTED
             throw e;
@@ -346,18 +558,21 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
             LCLog.info(listener, Messages.LCTestBuilder_MarkingBuildAsFailed());
             run.setResult(Result.FAILURE);
         } finally {
-            if (process != null) {
-                try {
-                    process.kill();
-                } catch (Exception e) {
-                    // Do nothing
-                }
+            if (progressRelay != null) {
+                progressRelay.close();
+            }
+
+            if (postProcessingStart != 0) {
+                long postProcessingTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - postProcessingStart);
+                LCReportAction.addPhaseTiming(LCPhaseTiming.POST_PROCESSING, null,
+                        Math.max(0, postProcessingTime - LCReportAction.getTransferTime()));
             }
 
             LCReportAction.setExitCode(exitCode);
             LCReportAction.setResult(result);
 
             LCSummaryAction currentAction = getOrCreateAction(run);
+            currentAction.finishLiveProgress(LCReportAction.getId());
             currentAction.addReport(LCReportAction);
         }
 
@@ -365,18 +580,170 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
         return true;
     }
 
+    /**
+     * @return false if the build has been marked as failed because of threshold violations
+     */
+    private boolean checkSlaRules(Run<?, ?> run, TaskListener listener, LCReportAction report) {
+        List<String> lines = LCSlaRule.getRuleLines(getSlaRules());
+        if (lines.isEmpty()) {
+            return true;
+        }
+
+        if (!LCReportDataParser.isVerified()) {
+            LCLog.warning(listener, Messages.LCTestBuilder_UnverifiedMetricsForSlaCheck(),
+                    LCReportDataParser.VERIFIED_PROPERTY);
+            report.setSlaNotEvaluated(Messages.LCTestBuilder_SlaMetricsNotVerified());
+            return true;
+        }
+
+        // Without statistics nothing can be checked; that is not taken for a violation
+        LCReportMetrics metrics = report.getMetrics();
+        if (metrics == null) {
+            String reason = getNoMetricsReason(report);
+            LCLog.warning(listener, Messages.LCTestBuilder_NoMetricsForSlaCheck(), reason);
+            report.setSlaNotEvaluated(reason);
+            return true;
+        }
+
+        // Rules that cannot be checked fail the check like violated ones
+
+        List<LCSlaViolation> violations = new ArrayList<LCSlaViolation>();
+        for (String line : lines) {
+            LCSlaRule rule = LCSlaRule.parse(line);
+            if (rule == null) {
+                LCLog.warning(listener, Messages.LCTestBuilder_InvalidSlaRule(), line);
+                violations.add(new LCSlaViolation(line, "", Messages.LCTestBuilder_SlaRuleNotValid()));
+            } else if (!rule.getTransaction().isEmpty() && metrics.getTransaction(rule.getTransaction()) == null) {
+                LCLog.warning(listener, Messages.LCTestBuilder_SlaTransactionNotFound(), rule.getText());
+                violations.add(new LCSlaViolation(rule.getText(), rule.getTransaction(),
+                        Messages.LCTestBuilder_SlaTransactionMissing()));
+            } else {
+                LCSlaViolation violation = rule.check(metrics);
+                if (violation != null) {
+                    violations.add(violation);
+                }
+            }
+        }
+
+        report.setSlaViolations(violations);
+        LCLog.info(listener, Messages.LCTestBuilder_SlaCheckFinished(), lines.size(), violations.size());
+
+        if (violations.isEmpty()) {
+            return true;
+        }
+
+        for (LCSlaViolation violation : violations) {
+            if (violation.getReason() != null) {
+                continue;
+            }
+            LCLog.warning(listener, Messages.LCTestBuilder_SlaViolated(), violation.getRule(),
+                    String.format(Locale.ENGLISH, "%.2f", violation.getActual()));
+        }
+
+        if (getActionOnSlaViolation().equals(BuildStepAction.MAKE_UNSTABLE.name())) {
+            LCLog.info(listener, Messages.LCTestBuilder_MarkingBuildAsUnstable());
+            run.setResult(Result.UNSTABLE);
+        } else if (getActionOnSlaViolation().equals(BuildStepAction.MAKE_FAILED.name())) {
+            LCLog.info(listener, Messages.LCTestBuilder_MarkingBuildAsFailed());
+            run.setResult(Result.FAILURE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the build has been marked as failed because of performance regressions
+     */
+    private boolean checkRegressions(Run<?, ?> run, TaskListener listener, LCReportAction report) {
+        RegressionBaseline baselineType;
+        try {
+            baselineType = RegressionBaseline.valueOf(getRegressionBaseline());
+        } catch (IllegalArgumentException e) {
+            baselineType = RegressionBaseline.NONE;
+        }
+        if (baselineType == RegressionBaseline.NONE) {
+            return true;
+        }
+
+        if (!LCReportDataParser.isVerified()) {
+            LCLog.warning(listener, Messages.LCTestBuilder_UnverifiedMetricsForRegressionCheck(),
+                    LCReportDataParser.VERIFIED_PROPERTY);
+            return true;
+        }
+
+        LCReportMetrics metrics = report.getMetrics();
+        if (metrics == null) {
+            LCLog.warning(listener, Messages.LCTestBuilder_NoMetricsForRegressionCheck(), getNoMetricsReason(report));
+            return true;
+        }
+
+        double threshold;
+        int pinnedBuild = 0;
+        try {
+            threshold = Double.parseDouble(getRegressionThreshold().trim());
+            if (baselineType == RegressionBaseline.PINNED) {
+                pinnedBuild = Integer.parseInt(getBaselineBuild().trim());
+            }
+        } catch (NumberFormatException e) {
+            LCLog.warning(listener, Messages.LCTestBuilder_InvalidRegressionSettings());
+            return true;
+        }
+
+        long startTime = System.currentTimeMillis();
+        LCRegressionGate.Baseline baseline = LCRegressionGate.findBaseline(run, report.getTestName(), baselineType,
+                pinnedBuild, getBaselineBuilds());
+        if (baseline == null) {
+            LCLog.info(listener, Messages.LCTestBuilder_NoRegressionBaseline());
+            return true;
+        }
+
+        List<LCRegression> regressions = LCRegressionGate.compare(metrics, baseline, threshold);
+        report.setRegressions(baseline.getDescription(), regressions);
+        LCLog.info(listener, Messages.LCTestBuilder_RegressionCheckFinished(), baseline.getDescription(),
+                regressions.size(), System.currentTimeMillis() - startTime);
+
+        if (regressions.isEmpty()) {
+            return true;
+        }
+
+        for (LCRegression regression : regressions) {
+            LCLog.warning(listener, Messages.LCTestBuilder_RegressionDetected(), regression.getTransaction(),
+                    regression.getMetric(), Math.round(regression.getCurrent()),
+                    Math.round(regression.getBaseline()), Math.round(regression.getDegradation()));
+        }
+
+        if (getActionOnRegression().equals(BuildStepAction.MAKE_UNSTABLE.name())) {
+            LCLog.info(listener, Messages.LCTestBuilder_MarkingBuildAsUnstable());
+            run.setResult(Result.UNSTABLE);
+        } else if (getActionOnRegression().equals(BuildStepAction.MAKE_FAILED.name())) {
+            LCLog.info(listener, Messages.LCTestBuilder_MarkingBuildAsFailed());
+            run.setResult(Result.FAILURE);
+            return false;
+        }
+        return true;
+    }
+
+    private static String getNoMetricsReason(LCReportAction report) {
+        return !report.getMetricsError().isEmpty() ? report.getMetricsError() :
+                Messages.LCTestBuilder_SlaMetricsMissing();
+    }
+
     private TestResultAction getTestResultAction(AbstractBuild<?, ?> build) {
         return build.getAction(TestResultAction.class);
     }
 
-    private void processFiles(TaskListener listener, Workspace workspace, LCReportAction testResult,
-                              long startTime, long stopTime, int exitCode) throws IOException, InterruptedException {
+    private void processFiles(Computer computer, TaskListener listener, Workspace workspace,
+                              LCReportAction testResult, LCTestRunner.Result runResult)
+            throws IOException, InterruptedException {
+
+        final int exitCode = runResult.getExitCode();
+        final LCLogInfo info = new LCLogInfo(runResult.getStartTime(), runResult.getStopTime());
 
         boolean hasError = false;
         BufferedReader br = null;
 
         try {
-            if (workspace.getSlaveErrorFilePath().exists()) {
+            if (runResult.hasFile(workspace.getSlaveErrorFilePath().getRemote())) {
                 br = new BufferedReader(new InputStreamReader(workspace.getSlaveErrorFilePath().read(), Charset.forName(Constants.DEFAULT_CHARSET_NAME)));
                 String errorString = br.readLine().trim();
                 LCLog.warning(listener, Messages.LCTestBuilder_ErrorMessage(), errorString);
@@ -386,8 +753,8 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
         } finally {
             if (br != null) {
                 br.close();
+                workspace.getSlaveErrorFilePath().delete();
             }
-            workspace.getSlaveErrorFilePath().delete();
         }
 
         String extraInfo = "";
@@ -396,33 +763,20 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
             extraInfo = " " + Messages.LCTestBuilder_CheckLogGenerationOptions();
         }
 
-        if (workspace.getSlaveZIPFilePath().exists()) {
-            try {
-                workspace.getSlaveZIPFilePath().copyTo(workspace.getMasterZIPFilePath());
-                String logFileName = workspace.getMasterZIPFilePath().getName();
-                testResult.setZipLogFileName(logFileName);
-                LCLogInfo info = new LCLogInfo(startTime, stopTime);
-                testResult.setLogInfo(info);
-            } finally {
-                workspace.getSlaveZIPFilePath().delete();
-            }
-        }
-        else {
+        testResult.setLogInfo(info);
+
+        Map<FilePath, FilePath> artifacts = new LinkedHashMap<FilePath, FilePath>();
+
+        if (runResult.hasFile(workspace.getSlaveZIPFilePath().getRemote())) {
+            artifacts.put(workspace.getSlaveZIPFilePath(), workspace.getMasterZIPFilePath());
+        } else {
             LCLog.warning(listener, Messages.LCTestBuilder_UnableToFindLogFile() + extraInfo,
                     workspace.getSlaveZIPFilePath().getName());
-
-            testResult.setLogInfo(new LCLogInfo(startTime, stopTime));
         }
 
         if (getGeneratePDF()) {
-            if (workspace.getSlavePDFFilePath().exists()) {
-                try {
-                    workspace.getSlavePDFFilePath().copyTo(workspace.getMasterPDFFilePath());
-                    String logFileName = workspace.getMasterPDFFilePath().getName();
-                    testResult.setPdfLogFileName(logFileName);
-                } finally {
-                    workspace.getSlavePDFFilePath().delete();
-                }
+            if (runResult.hasFile(workspace.getSlavePDFFilePath().getRemote())) {
+                artifacts.put(workspace.getSlavePDFFilePath(), workspace.getMasterPDFFilePath());
             } else {
                 LCLog.warning(listener, Messages.LCTestBuilder_UnableToFindLogFile() + extraInfo,
                         workspace.getSlavePDFFilePath().getName());
@@ -430,19 +784,74 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
         }
 
         if (getGenerateMHT()) {
-            if (workspace.getSlaveMHTFilePath().exists()) {
-                try {
-                    workspace.getSlaveMHTFilePath().copyTo(workspace.getMasterMHTFilePath());
-                    String logFileName = workspace.getMasterMHTFilePath().getName();
-                    testResult.setMhtLogFileName(logFileName);
-                } finally {
-                    workspace.getSlaveMHTFilePath().delete();
-                }
+            if (runResult.hasFile(workspace.getSlaveMHTFilePath().getRemote())) {
+                artifacts.put(workspace.getSlaveMHTFilePath(), workspace.getMasterMHTFilePath());
             } else {
                 LCLog.warning(listener, Messages.LCTestBuilder_UnableToFindLogFile() + extraInfo,
                         workspace.getSlaveMHTFilePath().getName());
             }
         }
+
+        if (artifacts.isEmpty()) {
+            return;
+        }
+
+        LCArtifactTransfer transfer = new LCArtifactTransfer(computer, listener);
+        Set<String> received = transfer.transfer(artifacts);
+
+        testResult.setTransferStats(transfer.getBytes(), transfer.getCompressedBytes(), transfer.getTransferTime());
+        LCMetrics metrics = LCMetrics.getInstance();
+        metrics.increment(LCMetrics.ARTIFACT_BYTES, transfer.getBytes());
+        metrics.increment(LCMetrics.ARTIFACT_COMPRESSED_BYTES, transfer.getCompressedBytes());
+        metrics.observeMillis(LCMetrics.ARTIFACT_TRANSFER, transfer.getTransferTime());
+        for (Map.Entry<String, Long> fileTime : transfer.getFileTransferTimes().entrySet()) {
+            testResult.addPhaseTiming(LCPhaseTiming.ARTIFACT_TRANSFER, fileTime.getKey(), fileTime.getValue());
+        }
+        LCLog.info(listener, Messages.LCTestBuilder_ReportFilesTransferred(), transfer.getBytes(),
+                transfer.getCompressedBytes(), transfer.getTransferTime());
+
+        for (FilePath source : artifacts.keySet()) {
+            if (!received.contains(source.getRemote())) {
+                LCLog.warning(listener, Messages.LCTestBuilder_ReportFileChecksumMismatch(), source.getRemote());
+            }
+        }
+
+        if (received.contains(workspace.getSlaveZIPFilePath().getRemote())) {
+            testResult.setZipLogFileName(workspace.getMasterZIPFilePath().getName());
+            collectMetrics(listener, workspace, testResult, info);
+        }
+
+        if (received.contains(workspace.getSlavePDFFilePath().getRemote())) {
+            testResult.setPdfLogFileName(workspace.getMasterPDFFilePath().getName());
+        }
+
+        if (received.contains(workspace.getSlaveMHTFilePath().getRemote())) {
+            testResult.setMhtLogFileName(workspace.getMasterMHTFilePath().getName());
+        }
+    }
+
+    private void collectMetrics(TaskListener listener, Workspace workspace, LCReportAction testResult, LCLogInfo info) {
+        File archive = new File(workspace.getMasterZIPFilePath().getRemote());
+        File metricsFile = new File(workspace.getMasterLogDirectory().getRemote(),
+                workspace.getLogId() + Constants.METRICS_FILE_EXTENSION);
+
+        try {
+            long startTime = System.currentTimeMillis();
+            LCReportMetrics metrics = LCReportDataParser.parse(archive, info);
+            if (metrics.isEmpty()) {
+                LCLog.info(listener, Messages.LCTestBuilder_NoMetricsFound());
+                testResult.setMetricsError(Messages.LCTestBuilder_NoSamplesInReport());
+                return;
+            }
+
+            metrics.save(metricsFile);
+            testResult.setMetrics(metricsFile.getName(), metrics);
+            LCLog.info(listener, Messages.LCTestBuilder_MetricsCollected(), metrics.getTotal().getCount(),
+                    metrics.getTransactions().size(), System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            LCLog.warning(listener, Messages.LCTestBuilder_UnableToCollectMetrics(), e.getMessage());
+            testResult.setMetricsError(String.format(Messages.LCTestBuilder_ReportDataNotReadable(), e.getMessage()));
+        }
     }
 
     private String makeDisplayName(Run<?, ?> run, TaskListener listener) throws IOException, InterruptedException {
@@ -574,6 +983,82 @@ public class LCTestBuilder extends Builder implements Serializable, SimpleBuildS
             }
         }
 
+        public FormValidation doCheckSlotWeight(@QueryParameter String value) throws IOException, ServletException {
+            try {
+                if (Integer.parseInt(value) > 0) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                // Do nothing
+            }
+            return FormValidation.error(Messages.LCTestBuilder_Descriptor_IsNotPositiveNumber());
+        }
+
+        public FormValidation doCheckBaselineBuilds(@QueryParameter String value) throws IOException, ServletException {
+            return doCheckSlotWeight(value);
+        }
+
+        public FormValidation doCheckRegressionThreshold(@QueryParameter String value)
+                throws IOException, ServletException {
+            try {
+                if (Double.parseDouble(value) >= 0) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                // Do nothing
+            }
+            return FormValidation.error(Messages.LCTestBuilder_Descriptor_IsNotNonNegativeNumber());
+        }
+
+        public ListBoxModel doFillRegressionBaselineItems() {
+            ListBoxModel model = new ListBoxModel();
+            model.add(Messages.RegressionBaseline_None(), RegressionBaseline.NONE.name());
+            model.add(Messages.RegressionBaseline_LastSuccessful(), RegressionBaseline.LAST_SUCCESSFUL.name());
+            model.add(Messages.RegressionBaseline_Pinned(), RegressionBaseline.PINNED.name());
+            model.add(Messages.RegressionBaseline_RollingMedian(), RegressionBaseline.ROLLING_MEDIAN.name());
+            return model;
+        }
+
+        public FormValidation doCheckProgressInterval(@QueryParameter String value)
+                throws IOException, ServletException {
+            try {
+                if (Integer.parseInt(value) >= 0) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                // Do nothing
+            }
+            return FormValidation.error(Messages.LCTestBuilder_Descriptor_IsNotNonNegativeNumber());
+        }
+
+        public FormValidation doCheckAbortRules(@QueryParameter String value) throws IOException, ServletException {
+            int line = LCAbortRule.findInvalidLine(value);
+            if (line > 0) {
+                return FormValidation.error(String.format(Messages.LCTestBuilder_Descriptor_InvalidAbortRule(), line));
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckSlaRules(@QueryParameter String value) throws IOException, ServletException {
+            int line = LCSlaRule.findInvalidLine(value);
+            if (line > 0) {
+                return FormValidation.error(String.format(Messages.LCTestBuilder_Descriptor_InvalidSlaRule(), line));
+            }
+            return FormValidation.ok();
+        }
+
+        public ListBoxModel doFillActionOnSlaViolationItems() {
+            return doFillActionOnRegressionItems();
+        }
+
+        public ListBoxModel doFillActionOnRegressionItems() {
+            ListBoxModel model = new ListBoxModel();
+            model.add(Messages.BuildStepAction_None(), BuildStepAction.NONE.name());
+            model.add(Messages.BuildStepAction_MakeUnstable(), BuildStepAction.MAKE_UNSTABLE.name());
+            model.add(Messages.BuildStepAction_MakeFailed(), BuildStepAction.MAKE_FAILED.name());
+            return model;
+        }
+
         public ListBoxModel doFillExecutorVersionItems() {
             ListBoxModel model = new ListBoxModel();
             model.add(Messages.LCTestBuilder_Descriptor_LatestTagText(), Constants.ANY_CONSTANT);
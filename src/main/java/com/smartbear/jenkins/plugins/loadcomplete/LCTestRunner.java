@@ -0,0 +1,384 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.Functions;
+import hudson.model.TaskListener;
+import hudson.remoting.Callable;
+import hudson.util.ProcessTree;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launches the LoadComplete test runner on the node, waits for it and measures the run there,
+ * so that only the result crosses the channel.
+ */
+public class LCTestRunner implements Callable<LCTestRunner.Result, Exception>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String PROPERTY_PREFIX = LCTestRunner.class.getName();
+
+    private static final long ABORT_CHECK_INTERVAL = 500;
+
+    // Milliseconds between checks whether a batch of progress is due, the monitor limits the rate itself
+    private static final long PROGRESS_SEND_CHECK_INTERVAL = 1000;
+
+    // Seconds the test runner has to write its report after it was asked to stop
+    private static final long ABORT_GRACE_PERIOD = Long.getLong(PROPERTY_PREFIX + ".abortGracePeriod", 30);
+
+    // Seconds to wait for taskkill to deliver the stop request
+    private static final long STOP_REQUEST_TIMEOUT = 10;
+
+    private final String[] command;
+    private final HashMap<String, String> environment;
+    private final String workingDirectory;
+    private final long timeout;
+    private final ArrayList<String> expectedFiles;
+    private final TaskListener listener;
+    private LCProgressMonitor progressMonitor;
+    private long abortGracePeriod = ABORT_GRACE_PERIOD;
+
+    /**
+     * @param timeout timeout in seconds, -1 for no timeout
+     * @param expectedFiles files the test runner may produce; the result tells which of them exist
+     */
+    public LCTestRunner(String[] command, Map<String, String> environment, String workingDirectory, long timeout,
+                        List<String> expectedFiles, TaskListener listener) {
+        this.command = command;
+        this.environment = new HashMap<String, String>(environment);
+        this.workingDirectory = workingDirectory;
+        this.timeout = timeout;
+        this.expectedFiles = new ArrayList<String>(expectedFiles);
+        this.listener = listener;
+    }
+
+    /**
+     * Makes the runner recognize progress lines in the test runner output and write them in samples.
+     */
+    void setProgressMonitor(LCProgressMonitor progressMonitor) {
+        this.progressMonitor = progressMonitor;
+    }
+
+    /**
+     * @param abortGracePeriod seconds the test runner has to write its report after an abort rule fired
+     */
+    void setAbortGracePeriod(long abortGracePeriod) {
+        this.abortGracePeriod = abortGracePeriod;
+    }
+
+    public static class Result implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private int exitCode = -2;
+        private boolean timedOut = false;
+        private String abortReason = null;
+        private long startTime = 0;
+        private long duration = 0;
+        private long launchTime = 0;
+        private HashSet<String> producedFiles = new HashSet<String>();
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * @return why the test was stopped early by an abort rule, or null
+         */
+        public String getAbortReason() {
+            return abortReason;
+        }
+
+        /**
+         * @return the wall-clock time of the node when the test runner was launched
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return the run duration in milliseconds, measured with a monotonic clock
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return milliseconds it took to start the test runner process
+         */
+        public long getLaunchTime() {
+            return launchTime;
+        }
+
+        public long getStopTime() {
+            return startTime + duration;
+        }
+
+        public boolean hasFile(String path) {
+            return producedFiles.contains(path);
+        }
+
+        public Set<String> getProducedFiles() {
+            return producedFiles;
+        }
+    }
+
+    public Result call() throws Exception {
+        Result result = new Result();
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().putAll(environment);
+        builder.directory(new File(workingDirectory));
+        builder.redirectErrorStream(true);
+
+        result.startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+
+        Process process = builder.start();
+        result.launchTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        Thread outputPump = progressMonitor != null ?
+                startProgressPump(process.getInputStream(), listener, progressMonitor, startNanos) :
+                startOutputPump(process.getInputStream(), listener.getLogger());
+        Thread progressSender = progressMonitor != null && progressMonitor.isSampling() ?
+                startProgressSender(progressMonitor) : null;
+
+        try {
+            if (progressMonitor == null) {
+                if (timeout < 0) {
+                    result.exitCode = process.waitFor();
+                } else if (process.waitFor(timeout, TimeUnit.SECONDS)) {
+                    result.exitCode = process.exitValue();
+                } else {
+                    result.timedOut = true;
+                    killProcessTree(process);
+                    result.exitCode = -1;
+                }
+            } else {
+                waitWithAbortRules(process, startNanos, result);
+            }
+        } catch (InterruptedException e) {
+            // The build has been aborted
+            killProcessTree(process);
+            throw e;
+        } finally {
+            result.duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            outputPump.join(TimeUnit.SECONDS.toMillis(10));
+            if (progressSender != null) {
+                progressSender.interrupt();
+                progressSender.join(TimeUnit.SECONDS.toMillis(10));
+            }
+            if (progressMonitor != null) {
+                // The controller unexports the sink once the proxy is collected here
+                progressMonitor.setSink(null);
+            }
+        }
+
+        for (String path : expectedFiles) {
+            if (new File(path).isFile()) {
+                result.producedFiles.add(path);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Waits for the test runner while watching the abort rules. When a rule fires, the runner is asked
+     * to stop, so it can still write the report of the part that has run, and its process tree is killed
+     * if it is still running after the grace period.
+     */
+    private void waitWithAbortRules(Process process, long startNanos, Result result) throws InterruptedException {
+        long deadline = timeout < 0 ? Long.MAX_VALUE : startNanos + TimeUnit.SECONDS.toNanos(timeout);
+
+        while (!process.waitFor(ABORT_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+            long now = System.nanoTime();
+            if (now - deadline >= 0) {
+                result.timedOut = true;
+                killProcessTree(process);
+                process.waitFor();
+                result.exitCode = -1;
+                return;
+            }
+
+            String abortReason = progressMonitor.getAbortReason();
+            if (abortReason != null) {
+                result.abortReason = abortReason;
+                requestStop(process);
+                if (!process.waitFor(abortGracePeriod, TimeUnit.SECONDS)) {
+                    killProcessTree(process);
+                    process.waitFor();
+                }
+                result.exitCode = -1;
+                return;
+            }
+        }
+        result.exitCode = process.exitValue();
+    }
+
+    /**
+     * Asks the test runner to exit without killing it. On Windows, Process.destroy terminates the process
+     * at once, so taskkill is run without /F instead, which sends the test runner and its child processes
+     * a close request. Elsewhere, Process.destroy sends SIGTERM.
+     */
+    private void requestStop(Process process) throws InterruptedException {
+        if (!Functions.isWindows()) {
+            process.destroy();
+            return;
+        }
+
+        int pid;
+        try {
+            pid = ProcessTree.get().get(process).getPid();
+        } catch (RuntimeException e) {
+            // The process tree is not available, the test runner is killed after the grace period
+            return;
+        }
+
+        try {
+            Process taskkill = new ProcessBuilder("taskkill", "/PID", String.valueOf(pid), "/T")
+                    .redirectErrorStream(true).start();
+            Thread output = startOutputPump(taskkill.getInputStream(), listener.getLogger());
+            if (!taskkill.waitFor(STOP_REQUEST_TIMEOUT, TimeUnit.SECONDS)) {
+                taskkill.destroy();
+            }
+            output.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (IOException e) {
+            // taskkill is not available, the test runner is killed after the grace period
+        }
+    }
+
+    private static Thread startOutputPump(final InputStream input, final OutputStream output) {
+        Thread thread = new Thread("LoadComplete test runner output") {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[8192];
+                try {
+                    int count;
+                    while ((count = input.read(buffer)) != -1) {
+                        output.write(buffer, 0, count);
+                    }
+                    output.flush();
+                } catch (IOException e) {
+                    // Do nothing
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static Thread startProgressPump(final InputStream input, final TaskListener listener,
+                                            final LCProgressMonitor monitor, final long startNanos) {
+        Thread thread = new Thread("LoadComplete test runner output") {
+            @Override
+            public void run() {
+                PrintStream output = listener.getLogger();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(input, Charset.defaultCharset()));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        long now = System.nanoTime();
+                        if (monitor.processLine(line, TimeUnit.NANOSECONDS.toMillis(now - startNanos)) == null ||
+                                !monitor.isSampling()) {
+                            output.println(line);
+                        } else {
+                            monitor.writeProgress(listener, now, false);
+                        }
+                    }
+                } catch (IOException e) {
+                    // Do nothing
+                } finally {
+                    monitor.writeProgress(listener, System.nanoTime(), true);
+                    output.flush();
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Sends the progress to the controller on a thread of its own, so a slow channel does not hold up
+     * reading the test runner output. The last batch is sent when the thread is interrupted.
+     */
+    private static Thread startProgressSender(final LCProgressMonitor monitor) {
+        Thread thread = new Thread("LoadComplete test runner progress") {
+            @Override
+            public void run() {
+                try {
+                    while (!isInterrupted()) {
+                        Thread.sleep(PROGRESS_SEND_CHECK_INTERVAL);
+                        monitor.sendProgress(System.nanoTime(), false);
+                    }
+                } catch (InterruptedException e) {
+                    // The test runner has exited
+                }
+                Thread.interrupted();
+                monitor.sendProgress(System.nanoTime(), true);
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void killProcessTree(Process process) throws InterruptedException {
+        try {
+            ProcessTree.get().get(process).killRecursively();
+        } catch (RuntimeException e) {
+            process.destroyForcibly();
+        }
+    }
+
+    @Override
+    public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+        // Stub
+    }
+
+}
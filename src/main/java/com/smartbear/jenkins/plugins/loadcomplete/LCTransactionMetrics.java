@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Response time statistics of a single transaction (or of all samples of a test).
+ * Times are in milliseconds.
+ */
+@ExportedBean
+public class LCTransactionMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final long errors;
+    private final long duration;
+    private final int virtualUsers;
+    private final LCHistogram histogram;
+
+    public LCTransactionMetrics(String name, LCHistogram histogram, long errors, long duration, int virtualUsers) {
+        this.name = name;
+        this.histogram = histogram;
+        this.errors = errors;
+        this.duration = duration;
+        this.virtualUsers = virtualUsers;
+    }
+
+    @Exported(name="name")
+    public String getName() {
+        return name;
+    }
+
+    @Exported(name="count")
+    public long getCount() {
+        return histogram.getTotalCount();
+    }
+
+    @Exported(name="errors")
+    public long getErrors() {
+        return errors;
+    }
+
+    @Exported(name="errorRate")
+    public double getErrorRate() {
+        return getCount() > 0 ? (double) errors / getCount() : 0;
+    }
+
+    @Exported(name="mean")
+    public double getMean() {
+        return histogram.getMean();
+    }
+
+    public String formatMean() {
+        return String.valueOf(Math.round(getMean()));
+    }
+
+    @Exported(name="min")
+    public long getMin() {
+        return histogram.getMin();
+    }
+
+    @Exported(name="max")
+    public long getMax() {
+        return histogram.getMax();
+    }
+
+    @Exported(name="p50")
+    public long getP50() {
+        return histogram.getValueAtPercentile(50);
+    }
+
+    @Exported(name="p90")
+    public long getP90() {
+        return histogram.getValueAtPercentile(90);
+    }
+
+    @Exported(name="p95")
+    public long getP95() {
+        return histogram.getValueAtPercentile(95);
+    }
+
+    @Exported(name="p99")
+    public long getP99() {
+        return histogram.getValueAtPercentile(99);
+    }
+
+    /**
+     * @return the time span the samples were taken in, in milliseconds
+     */
+    @Exported(name="duration")
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return samples per second
+     */
+    @Exported(name="throughput")
+    public double getThroughput() {
+        return duration > 0 ? getCount() * 1000.0 / duration : 0;
+    }
+
+    @Exported(name="virtualUsers")
+    public int getVirtualUsers() {
+        return virtualUsers;
+    }
+
+    public LCHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Combines the statistics of the same transaction of several tests. The steps of a build run one
+     * after another or at the same time in parallel branches, so the duration is the time the runs cover
+     * together, and the throughput is that of the build. The virtual users of runs that overlap are added
+     * up; the result is the most of these sums. A run whose start time is not known counts as if it ran
+     * apart from the others.
+     *
+     * @param startTimes the wall-clock start times of the runs in the order of the metrics, 0 if not known
+     */
+    static LCTransactionMetrics combine(String name, List<LCTransactionMetrics> metrics, List<Long> startTimes) {
+        LCHistogram histogram = new LCHistogram();
+        long errors = 0;
+        long duration = 0;
+        int virtualUsers = 0;
+
+        // start, stop and virtual users of the runs with a known start time
+        List<long[]> runs = new ArrayList<long[]>();
+        for (int i = 0; i < metrics.size(); i++) {
+            LCTransactionMetrics transaction = metrics.get(i);
+            histogram.merge(transaction.histogram);
+            errors += transaction.errors;
+            long startTime = startTimes.get(i);
+            if (startTime > 0) {
+                runs.add(new long[] {startTime, startTime + transaction.duration, transaction.virtualUsers});
+            } else {
+                duration += transaction.duration;
+                virtualUsers = Math.max(virtualUsers, transaction.virtualUsers);
+            }
+        }
+
+        Collections.sort(runs, new Comparator<long[]>() {
+            public int compare(long[] first, long[] second) {
+                return Long.compare(first[0], second[0]);
+            }
+        });
+        long[] overlap = null;
+        for (long[] run : runs) {
+            if (overlap != null && run[0] < overlap[1]) {
+                overlap[1] = Math.max(overlap[1], run[1]);
+                overlap[2] += run[2];
+                continue;
+            }
+            if (overlap != null) {
+                duration += overlap[1] - overlap[0];
+                virtualUsers = (int) Math.max(virtualUsers, overlap[2]);
+            }
+            overlap = run.clone();
+        }
+        if (overlap != null) {
+            duration += overlap[1] - overlap[0];
+            virtualUsers = (int) Math.max(virtualUsers, overlap[2]);
+        }
+
+        return new LCTransactionMetrics(name, histogram, errors, duration, virtualUsers);
+    }
+
+    void write(DataOutput output) throws IOException {
+        output.writeUTF(name);
+        output.writeLong(errors);
+        output.writeLong(duration);
+        output.writeInt(virtualUsers);
+        histogram.write(output);
+    }
+
+    static LCTransactionMetrics read(DataInput input) throws IOException {
+        String name = input.readUTF();
+        long errors = input.readLong();
+        long duration = input.readLong();
+        int virtualUsers = input.readInt();
+        LCHistogram histogram = LCHistogram.read(input);
+        return new LCTransactionMetrics(name, histogram, errors, duration, virtualUsers);
+    }
+
+}
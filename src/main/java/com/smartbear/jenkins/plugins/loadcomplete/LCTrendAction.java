@@ -0,0 +1,286 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Project;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.DataSetBuilder;
+import hudson.util.Graph;
+import hudson.util.ShiftedCategoryAxis;
+import jenkins.model.TransientActionFactory;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.ui.RectangleInsets;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Charts the LoadComplete statistics of the latest builds of a job. The data comes from
+ * the job's {@link LCTrendIndex}, so drawing the charts does not load any builds.
+ */
+public class LCTrendAction implements Action {
+
+    private static final int MAX_BUILDS = Integer.getInteger(LCTrendAction.class.getName() + ".maxBuilds", 100);
+
+    private static final int GRAPH_WIDTH = 500;
+    private static final int GRAPH_HEIGHT = 200;
+
+    private final Job<?, ?> job;
+
+    LCTrendAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public String getIconFileName() {
+        return "/plugin/" + Constants.PLUGIN_URL + "/images/lc-48x48.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.LCTrendAction_DisplayName();
+    }
+
+    public String getUrlName() {
+        return Constants.PLUGIN_URL + "Trend";
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    public boolean hasData() {
+        return LCTrendIndex.exists(job.getRootDir());
+    }
+
+    public Graph getResponseTimeGraph() {
+        return new TrendGraph(TrendGraph.RESPONSE_TIME);
+    }
+
+    public Graph getThroughputGraph() {
+        return new TrendGraph(TrendGraph.THROUGHPUT);
+    }
+
+    public Graph getErrorRateGraph() {
+        return new TrendGraph(TrendGraph.ERROR_RATE);
+    }
+
+    @RequirePOST
+    public HttpResponse doRebuild() throws IOException {
+        job.checkPermission(Item.CONFIGURE);
+        LCTrendIndex.rebuild(job.getRootDir(), job.getBuildDir());
+        return HttpResponses.redirectToDot();
+    }
+
+    private List<LCTrendIndex.Point> getPoints() {
+        try {
+            return LCTrendIndex.read(job.getRootDir(), MAX_BUILDS);
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Orders the chart columns by build number without loading the builds.
+     */
+    private static class BuildLabel implements Comparable<BuildLabel> {
+
+        private final int number;
+
+        BuildLabel(int number) {
+            this.number = number;
+        }
+
+        public int compareTo(BuildLabel other) {
+            return number < other.number ? -1 : (number == other.number ? 0 : 1);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof BuildLabel && ((BuildLabel) other).number == number;
+        }
+
+        @Override
+        public int hashCode() {
+            return number;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + number;
+        }
+    }
+
+    private class TrendGraph extends Graph {
+
+        static final int RESPONSE_TIME = 0;
+        static final int THROUGHPUT = 1;
+        static final int ERROR_RATE = 2;
+
+        private final int type;
+
+        TrendGraph(int type) {
+            super(LCTrendIndex.getLastModified(job.getRootDir()), GRAPH_WIDTH, GRAPH_HEIGHT);
+            this.type = type;
+        }
+
+        @Override
+        protected JFreeChart createGraph() {
+            DataSetBuilder<String, BuildLabel> dataSet = new DataSetBuilder<String, BuildLabel>();
+            String valueLabel;
+
+            if (type == RESPONSE_TIME) {
+                valueLabel = Messages.LCTrendAction_ResponseTimeAxis();
+                for (LCTrendIndex.Point point : getPoints()) {
+                    BuildLabel label = new BuildLabel(point.getBuildNumber());
+                    dataSet.add(point.getMean(), Messages.LCTrendAction_Mean(), label);
+                    dataSet.add(point.getP90(), Messages.LCTrendAction_P90(), label);
+                }
+            } else if (type == THROUGHPUT) {
+                valueLabel = Messages.LCTrendAction_ThroughputAxis();
+                for (LCTrendIndex.Point point : getPoints()) {
+                    dataSet.add(point.getThroughput(), Messages.LCTrendAction_Throughput(),
+                            new BuildLabel(point.getBuildNumber()));
+                }
+            } else {
+                valueLabel = Messages.LCTrendAction_ErrorRateAxis();
+                for (LCTrendIndex.Point point : getPoints()) {
+                    dataSet.add(point.getErrorRate() * 100, Messages.LCTrendAction_ErrorRate(),
+                            new BuildLabel(point.getBuildNumber()));
+                }
+            }
+
+            JFreeChart chart = ChartFactory.createLineChart(null, null, valueLabel, dataSet.build(),
+                    PlotOrientation.VERTICAL, true, true, false);
+            chart.setBackgroundPaint(Color.WHITE);
+
+            CategoryPlot plot = chart.getCategoryPlot();
+            plot.setBackgroundPaint(Color.WHITE);
+            plot.setOutlinePaint(null);
+            plot.setRangeGridlinesVisible(true);
+            plot.setRangeGridlinePaint(Color.BLACK);
+
+            CategoryAxis domainAxis = new ShiftedCategoryAxis(null);
+            plot.setDomainAxis(domainAxis);
+            domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_90);
+            domainAxis.setLowerMargin(0.0);
+            domainAxis.setUpperMargin(0.0);
+            domainAxis.setCategoryMargin(0.0);
+
+            plot.setInsets(new RectangleInsets(0, 0, 0, 5.0));
+            return chart;
+        }
+    }
+
+    @Extension
+    public static class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @Override
+        public Collection<? extends Action> createFor(Job target) {
+            if (LCTrendIndex.exists(target.getRootDir()) || hasLoadCompleteStep(target)) {
+                return Collections.singletonList(new LCTrendAction(target));
+            }
+            return Collections.emptyList();
+        }
+
+        private static boolean hasLoadCompleteStep(Job job) {
+            if (job instanceof Project) {
+                for (Object builder : ((Project<?, ?>) job).getBuilders()) {
+                    if (builder instanceof LCTestBuilder) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Adds a record for every completed build with LoadComplete statistics.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(Run<?, ?> run, TaskListener listener) {
+            LCSummaryAction summary = run.getAction(LCSummaryAction.class);
+            if (summary == null) {
+                return;
+            }
+
+            List<LCReportMetrics> metrics = new ArrayList<LCReportMetrics>();
+            for (LCReportAction report : summary.getReportsOrder()) {
+                if (report.getMetrics() != null) {
+                    metrics.add(report.getMetrics());
+                }
+            }
+
+            LCTrendIndex.Point point = LCTrendIndex.Point.create(run.getNumber(), run.getTimeInMillis(), metrics);
+            if (point == null) {
+                return;
+            }
+
+            try {
+                LCTrendIndex.append(run.getParent().getRootDir(), point);
+            } catch (IOException e) {
+                LCLog.warning(listener, Messages.LCTrendAction_UnableToUpdateIndex(), e.getMessage());
+            }
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            try {
+                LCTrendIndex.appendDeleted(run.getParent().getRootDir(), run.getNumber());
+            } catch (IOException e) {
+                // The build stays on the chart until the index is rebuilt
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only file in the job directory with one fixed-size record per build that ran LoadComplete tests.
+ * Trend charts read the latest records from the end of the file instead of loading the builds.
+ * A later record of a build replaces the earlier ones; a deleted build gets a record without samples.
+ * The file can be rebuilt from the metrics files kept in the "lcreports" directories of the builds.
+ */
+public class LCTrendIndex {
+
+    static final String FILE_NAME = "lctrend.idx";
+
+    // number, timestamp, samples, errors, mean, p90, throughput
+    private static final int RECORD_LENGTH = 4 + 8 + 8 + 8 + 8 + 8 + 8;
+    private static final int RECORDS_PER_READ = 256;
+    private static final long DELETED = -1;
+
+    private static final Object LOCK = new Object();
+
+    private LCTrendIndex() {
+    }
+
+    public static class Point {
+
+        private final int buildNumber;
+        private final long timestamp;
+        private final long samples;
+        private final long errors;
+        private final double mean;
+        private final long p90;
+        private final double throughput;
+
+        Point(int buildNumber, long timestamp, long samples, long errors, double mean, long p90, double throughput) {
+            this.buildNumber = buildNumber;
+            this.timestamp = timestamp;
+            this.samples = samples;
+            this.errors = errors;
+            this.mean = mean;
+            this.p90 = p90;
+            this.throughput = throughput;
+        }
+
+        /**
+         * Combines the statistics of all tests of a build the same way as the build page does,
+         * see {@link LCReportMetrics#combine}.
+         *
+         * @return null if there are no statistics
+         */
+        static Point create(int buildNumber, long timestamp, List<LCReportMetrics> metrics) {
+            if (metrics.isEmpty()) {
+                return null;
+            }
+            LCTransactionMetrics total = metrics.size() == 1 ? metrics.get(0).getTotal() :
+                    LCReportMetrics.combine(metrics).getTotal();
+            if (total.getCount() == 0) {
+                return null;
+            }
+            return new Point(buildNumber, timestamp, total.getCount(), total.getErrors(), total.getMean(),
+                    total.getP90(), total.getThroughput());
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getErrorRate() {
+            return samples > 0 ? (double) errors / samples : 0;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public double getThroughput() {
+            return throughput;
+        }
+
+        boolean isDeleted() {
+            return samples == DELETED;
+        }
+
+        void write(ByteBuffer buffer) {
+            buffer.putInt(buildNumber);
+            buffer.putLong(timestamp);
+            buffer.putLong(samples);
+            buffer.putLong(errors);
+            buffer.putDouble(mean);
+            buffer.putLong(p90);
+            buffer.putDouble(throughput);
+        }
+
+        static Point read(ByteBuffer buffer) {
+            return new Point(buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                    buffer.getDouble(), buffer.getLong(), buffer.getDouble());
+        }
+    }
+
+    static File getFile(File jobDirectory) {
+        return new File(jobDirectory, FILE_NAME);
+    }
+
+    public static boolean exists(File jobDirectory) {
+        return getFile(jobDirectory).isFile();
+    }
+
+    public static long getLastModified(File jobDirectory) {
+        return getFile(jobDirectory).lastModified();
+    }
+
+    public static void append(File jobDirectory, Point point) throws IOException {
+        synchronized (LOCK) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_LENGTH);
+            point.write(buffer);
+
+            RandomAccessFile file = new RandomAccessFile(getFile(jobDirectory), "rw");
+            try {
+                // Drop a partial record left by a crash, so the records stay aligned
+                long length = file.length() - file.length() % RECORD_LENGTH;
+                file.setLength(length);
+                file.seek(length);
+                file.write(buffer.array());
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    public static void appendDeleted(File jobDirectory, int buildNumber) throws IOException {
+        if (exists(jobDirectory)) {
+            append(jobDirectory, new Point(buildNumber, 0, DELETED, 0, 0, 0, 0));
+        }
+    }
+
+    /**
+     * @return up to maxBuilds latest builds, the oldest first
+     */
+    public static List<Point> read(File jobDirectory, int maxBuilds) throws IOException {
+        List<Point> result = new ArrayList<Point>();
+        File indexFile = getFile(jobDirectory);
+        if (!indexFile.isFile()) {
+            return result;
+        }
+
+        Set<Integer> seen = new HashSet<Integer>();
+        RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+        try {
+            long records = file.length() / RECORD_LENGTH;
+            byte[] block = new byte[RECORDS_PER_READ * RECORD_LENGTH];
+
+            while (records > 0 && result.size() < maxBuilds) {
+                int count = (int) Math.min(RECORDS_PER_READ, records);
+                records -= count;
+                file.seek(records * RECORD_LENGTH);
+                file.readFully(block, 0, count * RECORD_LENGTH);
+
+                // The newest record of a build wins
+                for (int i = count - 1; i >= 0 && result.size() < maxBuilds; i--) {
+                    ByteBuffer buffer = ByteBuffer.wrap(block, i * RECORD_LENGTH, RECORD_LENGTH);
+                    Point point = Point.read(buffer);
+                    if (seen.add(point.getBuildNumber()) && !point.isDeleted()) {
+                        result.add(point);
+                    }
+                }
+            }
+        } finally {
+            file.close();
+        }
+
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Recreates the index from the metrics files of the builds, without loading the builds.
+     */
+    public static void rebuild(File jobDirectory, File buildsDirectory) throws IOException {
+        List<Integer> buildNumbers = new ArrayList<Integer>();
+        String[] names = buildsDirectory.list();
+        if (names != null) {
+            for (String name : names) {
+                try {
+                    buildNumbers.add(Integer.parseInt(name));
+                } catch (NumberFormatException e) {
+                    // Not a build directory
+                }
+            }
+        }
+        Collections.sort(buildNumbers);
+
+        synchronized (LOCK) {
+            File indexFile = getFile(jobDirectory);
+            File temp = new File(indexFile.getPath() + ".tmp");
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(temp));
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(RECORD_LENGTH);
+                for (int buildNumber : buildNumbers) {
+                    Point point = readBuild(new File(buildsDirectory, Integer.toString(buildNumber)), buildNumber);
+                    if (point != null) {
+                        buffer.clear();
+                        point.write(buffer);
+                        output.write(buffer.array());
+                    }
+                }
+            } finally {
+                output.close();
+            }
+
+            if (indexFile.exists() && !indexFile.delete() || !temp.renameTo(indexFile)) {
+                temp.delete();
+                throw new IOException(String.format(Messages.LCArtifactTransfer_UnableToRename(), temp, indexFile));
+            }
+        }
+    }
+
+    private static Point readBuild(File buildDirectory, int buildNumber) {
+        File[] metricsFiles = new File(buildDirectory, Constants.REPORTS_DIRECTORY_NAME).listFiles();
+        if (metricsFiles == null) {
+            return null;
+        }
+
+        List<LCReportMetrics> metrics = new ArrayList<LCReportMetrics>();
+        long timestamp = 0;
+        for (File metricsFile : metricsFiles) {
+            if (!metricsFile.getName().endsWith(Constants.METRICS_FILE_EXTENSION)) {
+                continue;
+            }
+            try {
+                metrics.add(LCReportMetrics.load(metricsFile));
+                timestamp = Math.max(timestamp, metricsFile.lastModified());
+            } catch (IOException e) {
+                // Skip damaged files
+            }
+        }
+        return Point.create(buildNumber, timestamp, metrics);
+    }
+
+}
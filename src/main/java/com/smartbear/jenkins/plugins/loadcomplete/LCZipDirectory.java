@@ -0,0 +1,214 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the central directory of a ZIP archive to locate the raw (still compressed) data of its entries.
+ * ZIP64 archives and entries are not supported, such entries are simply not listed.
+ */
+class LCZipDirectory {
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    // Minimal gzip member header: deflate, no flags, no time, unknown OS
+    static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    static final int GZIP_TRAILER_LENGTH = 8;
+
+    private static final int END_OF_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int DIRECTORY_ENTRY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int END_OF_DIRECTORY_LENGTH = 22;
+    private static final int DIRECTORY_ENTRY_LENGTH = 46;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+    private static final int FLAG_ENCRYPTED = 0x01;
+
+    // java.util.zip.ZipFile decodes entry names as UTF-8 by default
+    private static final Charset NAME_CHARSET = Charset.forName("UTF-8");
+
+    private LCZipDirectory() {
+    }
+
+    static class RawEntry {
+
+        private final int method;
+        private final int flags;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private volatile long dataOffset = -1;
+
+        RawEntry(int method, int flags, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.method = method;
+            this.flags = flags;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        boolean isEncrypted() {
+            return (flags & FLAG_ENCRYPTED) != 0;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the trailer that turns the raw data of a deflated entry, prefixed with {@link #GZIP_HEADER},
+         * into a gzip member
+         */
+        byte[] getGzipTrailer() {
+            ByteBuffer trailer = ByteBuffer.allocate(GZIP_TRAILER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc);
+            trailer.putInt((int) size);
+            return trailer.array();
+        }
+
+        /**
+         * @return the position of the entry data in the archive, right after its local header
+         */
+        long getDataOffset(FileChannel channel) throws IOException {
+            if (dataOffset < 0) {
+                ByteBuffer header = read(channel, localHeaderOffset, LOCAL_HEADER_LENGTH);
+                if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                    throw new IOException(Messages.LCZipDirectory_InvalidArchive());
+                }
+                int nameLength = header.getShort(26) & 0xFFFF;
+                int extraLength = header.getShort(28) & 0xFFFF;
+                dataOffset = localHeaderOffset + LOCAL_HEADER_LENGTH + nameLength + extraLength;
+            }
+            return dataOffset;
+        }
+    }
+
+    static Map<String, RawEntry> read(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int tailLength = (int) Math.min(fileSize, END_OF_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH);
+        if (tailLength < END_OF_DIRECTORY_LENGTH) {
+            return Collections.emptyMap();
+        }
+
+        ByteBuffer tail = read(channel, fileSize - tailLength, tailLength);
+
+        int end = -1;
+        for (int i = tailLength - END_OF_DIRECTORY_LENGTH; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_DIRECTORY_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return Collections.emptyMap();
+        }
+
+        int count = tail.getShort(end + 10) & 0xFFFF;
+        long directoryLength = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if (directoryOffset == ZIP64_MARKER || directoryLength == ZIP64_MARKER ||
+                directoryOffset + directoryLength > fileSize || directoryLength > Integer.MAX_VALUE) {
+            return Collections.emptyMap();
+        }
+
+        ByteBuffer directory = read(channel, directoryOffset, (int) directoryLength);
+        Map<String, RawEntry> entries = new HashMap<String, RawEntry>(count * 4 / 3 + 1);
+
+        int position = 0;
+        for (int i = 0; i < count && position + DIRECTORY_ENTRY_LENGTH <= directoryLength; i++) {
+            if (directory.getInt(position) != DIRECTORY_ENTRY_SIGNATURE) {
+                break;
+            }
+
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long crc = directory.getInt(position + 16) & 0xFFFFFFFFL;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+            if (position + DIRECTORY_ENTRY_LENGTH + nameLength > directoryLength) {
+                break;
+            }
+
+            byte[] name = new byte[nameLength];
+            directory.position(position + DIRECTORY_ENTRY_LENGTH);
+            directory.get(name);
+
+            if (compressedSize != ZIP64_MARKER && size != ZIP64_MARKER && localHeaderOffset != ZIP64_MARKER) {
+                entries.put(new String(name, NAME_CHARSET),
+                        new RawEntry(method, flags, crc, compressedSize, size, localHeaderOffset));
+            }
+
+            position += DIRECTORY_ENTRY_LENGTH + nameLength + extraLength + commentLength;
+        }
+
+        return entries;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+}
@@ -26,126 +26,192 @@ package com.smartbear.jenkins.plugins.loadcomplete;
 
 import hudson.model.Node;
 import hudson.model.TaskListener;
-import hudson.remoting.Callable;
-import hudson.remoting.VirtualChannel;
-import org.jenkinsci.remoting.RoleChecker;
 
-import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Utils {
 
     private Utils() {
     }
 
-    public static boolean isWindows(VirtualChannel channel, TaskListener listener) {
-        try {
-            return channel.call(new Callable<Boolean, Exception>() {
+    public static String formatDuration(long millis) {
+        long timeInSeconds = millis / 1000;
+        long s = timeInSeconds % 60;
+        long m = (timeInSeconds / 60) % 60;
+        long h = timeInSeconds / (60 * 60);
+        return String.format("%d:%02d:%02d", h, m, s);
+    }
 
-                @Override
-                public void checkRoles(RoleChecker roleChecker) throws SecurityException {
-                    // Stub
-                }
+    public static int getNodeSlots(Node node) {
+        if (node == null) {
+            return LCNodeProperty.DEFAULT_SLOTS;
+        }
+        LCNodeProperty property = node.getNodeProperties().get(LCNodeProperty.class);
+        return property != null ? property.getSlots() : LCNodeProperty.DEFAULT_SLOTS;
+    }
 
-                public Boolean call() throws Exception {
-                    String os = System.getProperty("os.name");
-                    if (os != null) {
-                        os = os.toLowerCase();
-                    }
-                    return (os != null && os.contains("windows"));
-                }
+    public static class NodeSlotLease {
 
-            });
-        } catch (Exception e) {
-            LCLog.error(listener, Messages.LCTestBuilder_RemoteCallingFailed(), e);
-            return false;
+        private final NodeSlots slots;
+        private final int weight;
+        private final int inUse;
+        private final long waitTime;
+
+        NodeSlotLease(NodeSlots slots, int weight, int inUse, long waitTime) {
+            this.slots = slots;
+            this.weight = weight;
+            this.inUse = inUse;
+            this.waitTime = waitTime;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getCapacity() {
+            return slots.capacity;
+        }
+
+        public int getInUse() {
+            return inUse;
+        }
+
+        public long getWaitTime() {
+            return waitTime;
         }
     }
 
-    public static long getSystemTime(VirtualChannel channel, TaskListener listener) {
-        try {
-            return channel.call(new Callable<Long, Exception>() {
+    static class NodeSlots {
 
-                @Override
-                public void checkRoles(RoleChecker roleChecker) throws SecurityException {
-                    // Stub
-                }
+        private final int capacity;
+        private final Semaphore semaphore;
+
+        // Holders and waiters of the slots. -1 means the entry was removed from the registry.
+        private final AtomicInteger users = new AtomicInteger(0);
 
-                public Long call() throws Exception {
-                    return System.currentTimeMillis();
+        NodeSlots(int capacity) {
+            this.capacity = capacity;
+            this.semaphore = new Semaphore(capacity, true);
+        }
+
+        boolean retain() {
+            while (true) {
+                int current = users.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (users.compareAndSet(current, current + 1)) {
+                    return true;
                 }
+            }
+        }
 
-            });
-        } catch (Exception e) {
-            LCLog.error(listener, Messages.LCTestBuilder_RemoteCallingFailed(), e);
-            return 0;
+        boolean releaseLast() {
+            return users.decrementAndGet() == 0 && users.compareAndSet(0, -1);
         }
     }
 
     public static class BusyNodeList {
 
-        private Map<WeakReference<Node>, Semaphore> nodeLocks = new HashMap<WeakReference<Node>, Semaphore>();
+        final ConcurrentMap<String, NodeSlots> nodeLocks = new ConcurrentHashMap<String, NodeSlots>();
 
-        public void lock(Node node, TaskListener listener) throws InterruptedException {
-            Semaphore semaphore = null;
-            synchronized (this) {
-                for (WeakReference<Node> nodeRef : nodeLocks.keySet()) {
-                    Node actualNode = nodeRef.get();
-                    if (actualNode != null && actualNode == node) {
-                        semaphore = nodeLocks.get(nodeRef);
+        private static String getNodeKey(Node node) {
+            return node != null ? node.getNodeName() : "";
+        }
+
+        private NodeSlots retain(String nodeKey, int capacity) {
+            while (true) {
+                NodeSlots slots = nodeLocks.get(nodeKey);
+                if (slots == null) {
+                    NodeSlots created = new NodeSlots(capacity);
+                    slots = nodeLocks.putIfAbsent(nodeKey, created);
+                    if (slots == null) {
+                        slots = created;
                     }
                 }
-
-                if (semaphore == null) {
-                    semaphore = new Semaphore(1, true);
-                    nodeLocks.put(new WeakReference<Node>(node), semaphore);
-                } else {
-                    listener.getLogger().println();
-                    LCLog.info(listener, Messages.LCTestBuilder_WaitingForNodeRelease());
+                if (slots.retain()) {
+                    return slots;
                 }
+                // the entry is being removed by the last user, help it and retry
+                nodeLocks.remove(nodeKey, slots);
             }
-
-            semaphore.acquire();
         }
 
-        public void release(Node node) throws InterruptedException {
-            Semaphore semaphore = null;
-            synchronized (this) {
-                for (WeakReference<Node> nodeRef : nodeLocks.keySet()) {
-                    Node actualNode = nodeRef.get();
-                    if (actualNode != null && actualNode == node) {
-                        semaphore = nodeLocks.get(nodeRef);
-                    }
-                }
+        private void unretain(String nodeKey, NodeSlots slots) {
+            if (slots.releaseLast()) {
+                nodeLocks.remove(nodeKey, slots);
             }
-            if (semaphore != null) {
-                semaphore.release();
+        }
+
+        public int getFreeSlots(Node node) {
+            NodeSlots slots = nodeLocks.get(getNodeKey(node));
+            return slots != null ? Math.max(slots.semaphore.availablePermits(), 0) : getNodeSlots(node);
+        }
+
+        /**
+         * @return slots in use and steps waiting for slots, by node name
+         */
+        public Map<String, int[]> getSlotUsage() {
+            Map<String, int[]> result = new HashMap<String, int[]>();
+            for (Map.Entry<String, NodeSlots> entry : nodeLocks.entrySet()) {
+                NodeSlots slots = entry.getValue();
+                result.put(entry.getKey(), new int[] {
+                        Math.max(0, slots.capacity - slots.semaphore.availablePermits()),
+                        slots.semaphore.getQueueLength()});
             }
+            return result;
+        }
+
+        public NodeSlotLease lock(Node node, int weight, TaskListener listener) throws InterruptedException {
+            return lock(getNodeKey(node), getNodeSlots(node), weight, listener);
+        }
 
-            Thread.sleep(200);
+        /**
+         * @param capacity the number of slots of the node, used if nobody holds or waits for its slots
+         */
+        NodeSlotLease lock(String nodeKey, int capacity, int weight, TaskListener listener)
+                throws InterruptedException {
+            NodeSlots slots = retain(nodeKey, capacity);
 
-            // cleanup the unused items
-            synchronized (this) {
-                List<WeakReference<Node>> toRemove = new ArrayList<WeakReference<Node>>();
+            // a step can never ask for more than the whole node
+            weight = Math.min(Math.max(weight, 1), slots.capacity);
 
-                for (WeakReference<Node> nodeRef : nodeLocks.keySet()) {
-                    Node actualNode = nodeRef.get();
-                    if (actualNode != null && actualNode == node) {
-                        semaphore = nodeLocks.get(nodeRef);
-                        if (semaphore.availablePermits() > 0) {
-                            toRemove.add(nodeRef);
-                        }
-                    }
-                }
+            if (slots.semaphore.availablePermits() < weight) {
+                listener.getLogger().println();
+                LCLog.info(listener, Messages.LCTestBuilder_WaitingForNodeRelease());
+            }
 
-                for (WeakReference<Node> nodeRef : toRemove) {
-                    nodeLocks.remove(nodeRef);
-                }
+            long startNanos = System.nanoTime();
+            try {
+                slots.semaphore.acquire(weight);
+            } catch (InterruptedException e) {
+                unretain(nodeKey, slots);
+                throw e;
             }
+            long waitNanos = System.nanoTime() - startNanos;
+            long waitTime = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+            LCMetrics.getInstance().observe(LCMetrics.NODE_LOCK_WAIT, waitNanos, "node", nodeKey);
+
+            int inUse = slots.capacity - slots.semaphore.availablePermits();
+            LCLog.info(listener, Messages.LCTestBuilder_NodeSlotsAcquired(), weight, inUse, slots.capacity,
+                    formatDuration(waitTime));
+
+            return new NodeSlotLease(slots, weight, inUse, waitTime);
+        }
+
+        public void release(Node node, NodeSlotLease lease) {
+            release(getNodeKey(node), lease);
+        }
+
+        void release(String nodeKey, NodeSlotLease lease) {
+            lease.slots.semaphore.release(lease.getWeight());
+            unretain(nodeKey, lease.slots);
         }
     }
 }
\ No newline at end of file
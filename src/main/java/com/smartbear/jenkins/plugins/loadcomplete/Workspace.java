@@ -51,7 +51,14 @@ public class Workspace {
     private final FilePath masterLogDirectory;
 
     public Workspace(Run<?, ?> run, FilePath filePath) throws IOException, InterruptedException {
-        this.slaveWorkspacePath = getSlaveWorkspace(filePath);
+        this(run, filePath, true);
+    }
+
+    /**
+     * @param prepare false if the node workspace has already been created and made absolute (see {@link LCAgentProbe})
+     */
+    Workspace(Run<?, ?> run, FilePath filePath, boolean prepare) throws IOException, InterruptedException {
+        this.slaveWorkspacePath = prepare ? getSlaveWorkspace(filePath) : filePath;
         this.logId = Long.toString(System.currentTimeMillis() % 10000000);
 
         String zipName = this.logId + Constants.ZIP_FILE_EXTENSION;
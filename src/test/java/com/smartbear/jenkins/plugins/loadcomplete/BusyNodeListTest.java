@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.model.TaskListener;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class BusyNodeListTest {
+
+    private static final int THREADS = 200;
+    private static final int ITERATIONS = 200;
+
+    @Test
+    public void removedSlotsCannotBeRetained() {
+        Utils.NodeSlots slots = new Utils.NodeSlots(1);
+        assertTrue(slots.retain());
+        assertTrue(slots.retain());
+        assertFalse(slots.releaseLast());
+        assertTrue(slots.releaseLast());
+
+        // The last user has marked the entry as removed (-1)
+        assertFalse(slots.retain());
+    }
+
+    @Test
+    public void lockReplacesSlotsRemovedByTheLastUser() throws Exception {
+        Utils.BusyNodeList busyNodes = new Utils.BusyNodeList();
+
+        // A lock that found the entry just before the last user removed it
+        Utils.NodeSlots removed = new Utils.NodeSlots(2);
+        assertTrue(removed.retain());
+        assertTrue(removed.releaseLast());
+        busyNodes.nodeLocks.put("node", removed);
+
+        Utils.NodeSlotLease lease = busyNodes.lock("node", 2, 1, TaskListener.NULL);
+        assertNotSame(removed, busyNodes.nodeLocks.get("node"));
+        assertEquals(2, lease.getCapacity());
+        assertEquals(1, lease.getInUse());
+
+        busyNodes.release("node", lease);
+        assertTrue(busyNodes.nodeLocks.isEmpty());
+    }
+
+    @Test
+    public void weightIsLimitedByCapacity() throws Exception {
+        Utils.BusyNodeList busyNodes = new Utils.BusyNodeList();
+
+        Utils.NodeSlotLease lease = busyNodes.lock("node", 2, 5, TaskListener.NULL);
+        assertEquals(2, lease.getWeight());
+        assertEquals(0, busyNodes.getSlotUsage().get("node")[1]);
+
+        busyNodes.release("node", lease);
+        assertTrue(busyNodes.getSlotUsage().isEmpty());
+    }
+
+    @Test(timeout = 120000)
+    public void concurrentLocksNeverExceedCapacity() throws Exception {
+        final Utils.BusyNodeList busyNodes = new Utils.BusyNodeList();
+        final int[] capacities = {1, 2, 3, 4, 8};
+        final AtomicIntegerArray inUse = new AtomicIntegerArray(capacities.length);
+        final AtomicInteger overbooked = new AtomicInteger();
+
+        runConcurrently(new Step() {
+            public void run(Random random) throws Exception {
+                int node = random.nextInt(capacities.length);
+                int weight = 1 + random.nextInt(2);
+                String nodeKey = "node-" + node;
+
+                Utils.NodeSlotLease lease = busyNodes.lock(nodeKey, capacities[node], weight, TaskListener.NULL);
+                try {
+                    if (inUse.addAndGet(node, lease.getWeight()) > capacities[node]) {
+                        overbooked.incrementAndGet();
+                    }
+                    if (random.nextBoolean()) {
+                        Thread.yield();
+                    }
+                    inUse.addAndGet(node, -lease.getWeight());
+                } finally {
+                    busyNodes.release(nodeKey, lease);
+                }
+            }
+        });
+
+        assertEquals(0, overbooked.get());
+        assertTrue(busyNodes.getSlotUsage().isEmpty());
+    }
+
+    @Test(timeout = 120000)
+    public void entriesAreRemovedAndRecreatedUnderChurn() throws Exception {
+        final Utils.BusyNodeList busyNodes = new Utils.BusyNodeList();
+        final AtomicInteger leases = new AtomicInteger();
+
+        // Enough slots for everyone, so the entry keeps being removed by the last user and created again
+        runConcurrently(new Step() {
+            public void run(Random random) throws Exception {
+                Utils.NodeSlotLease lease = busyNodes.lock("node", THREADS, 1, TaskListener.NULL);
+                assertEquals(THREADS, lease.getCapacity());
+                leases.incrementAndGet();
+                busyNodes.release("node", lease);
+            }
+        });
+
+        assertEquals(THREADS * ITERATIONS, leases.get());
+        assertTrue(busyNodes.nodeLocks.isEmpty());
+    }
+
+    private interface Step {
+        void run(Random random) throws Exception;
+    }
+
+    private static void runConcurrently(final Step step) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < THREADS; i++) {
+            final Random random = new Random(i);
+            Thread thread = new Thread("BusyNodeListTest-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < ITERATIONS; j++) {
+                            step.run(random);
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.size() + " threads failed", failures.get(0));
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the abort rules against progress like the test runner reports it: each line carries the average
+ * response time since the previous line and the cumulative number of errors.
+ */
+public class LCAbortRuleTest {
+
+    private static final List<LCProgress> HISTORY = Arrays.asList(
+            new LCProgress(10000, 10, 20, 0, 100),
+            new LCProgress(20000, 10, 20, 10, 300),
+            new LCProgress(30000, 10, 20, 50, 800));
+
+    @Test
+    public void percentileRulesAreRejected() {
+        assertNull(LCAbortRule.parse("p95 > 10 s for 2 min"));
+        assertNull(LCAbortRule.parseAll("error rate > 20% for 60 s\np95 > 10 s for 2 min"));
+        assertNotNull(LCAbortRule.parse("response time > 10 s for 2 min"));
+    }
+
+    @Test
+    public void responseTimeIsTheMeanOfTheReportedAverages() {
+        LCAbortRule rule = LCAbortRule.parse("response time > 300 ms for 20 s");
+
+        assertEquals(400, rule.check(HISTORY), 0.001);
+        assertNull(LCAbortRule.parse("response time > 500 ms for 20 s").check(HISTORY));
+    }
+
+    @Test
+    public void errorsAreCountedSinceTheStartOfTheWindow() {
+        // 40 errors of 200 requests since the progress 10 seconds ago
+        assertEquals(20, LCAbortRule.parse("error rate >= 20% for 5 s").check(HISTORY), 0.001);
+        assertEquals(40, LCAbortRule.parse("errors > 30 for 5 s").check(HISTORY), 0.001);
+        assertNull(LCAbortRule.parse("errors > 30 for 1 min").check(HISTORY));
+    }
+
+}
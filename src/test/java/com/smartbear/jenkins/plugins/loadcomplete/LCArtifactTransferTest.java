@@ -0,0 +1,455 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.FilePath;
+import hudson.remoting.Callable;
+import hudson.remoting.Future;
+import hudson.remoting.LocalChannel;
+import hudson.remoting.RequestAbortedException;
+import hudson.remoting.VirtualChannel;
+import hudson.util.StreamTaskListener;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.jenkinsci.remoting.RoleChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the transfer callables over a local channel on temporary files. The node copy of a file is
+ * the only one, so every test checks that it is deleted only after the controller copy was verified.
+ */
+public class LCArtifactTransferTest {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+    private ByteArrayOutputStream log;
+    private StreamTaskListener listener;
+    private FakeConnection connection;
+    private File nodeDirectory;
+    private File controllerDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        log = new ByteArrayOutputStream();
+        listener = new StreamTaskListener(log, CHARSET);
+        connection = new FakeConnection(new FaultyChannel());
+        nodeDirectory = folder.newFolder("node");
+        controllerDirectory = folder.newFolder("controller");
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A node that stays online; a test replaces the channel to simulate a reconnect.
+     */
+    private static class FakeConnection implements LCArtifactTransfer.NodeConnection {
+
+        private volatile VirtualChannel channel;
+        private int channelRequests = 0;
+
+        FakeConnection(VirtualChannel channel) {
+            this.channel = channel;
+        }
+
+        public synchronized VirtualChannel getChannel() {
+            channelRequests++;
+            return channel;
+        }
+
+        public boolean isOnline() {
+            return true;
+        }
+
+        public String getDisplayName() {
+            return "agent";
+        }
+    }
+
+    /**
+     * Runs the callables in this JVM through a local channel and lets a test replace their results.
+     */
+    private class FaultyChannel implements VirtualChannel {
+
+        private final LocalChannel local = new LocalChannel(executor);
+
+        /**
+         * @return the result the controller receives
+         */
+        Object filter(Callable<?, ?> callable, Object result) throws IOException {
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <V, T extends Throwable> V call(Callable<V, T> callable) throws IOException, T, InterruptedException {
+            return (V) filter(callable, local.call(callable));
+        }
+
+        public <V, T extends Throwable> Future<V> callAsync(final Callable<V, T> callable) throws IOException {
+            return local.callAsync(new Callable<V, Throwable>() {
+                @SuppressWarnings("unchecked")
+                public V call() throws Throwable {
+                    return (V) filter(callable, callable.call());
+                }
+
+                @Override
+                public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+                    // Stub
+                }
+            });
+        }
+
+        public void close() {
+        }
+
+        public void join() {
+        }
+
+        public void join(long timeout) {
+        }
+
+        public <T> T export(Class<T> type, T instance) {
+            return instance;
+        }
+
+        public void syncLocalIO() {
+        }
+    }
+
+    private File createFile(String name, byte[] content) throws IOException {
+        File file = new File(nodeDirectory, name);
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] result = new byte[length];
+        new Random(length).nextBytes(result);
+        return result;
+    }
+
+    private static byte[] textBytes(int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < length; i++) {
+            builder.append("<tr><td>Login</td><td>").append(i % 977).append(" ms</td></tr>\n");
+        }
+        return builder.substring(0, length).getBytes(CHARSET);
+    }
+
+    private Map<FilePath, FilePath> toArtifacts(File... sources) {
+        Map<FilePath, FilePath> artifacts = new LinkedHashMap<FilePath, FilePath>();
+        for (File source : sources) {
+            artifacts.put(new FilePath(source), new FilePath(new File(controllerDirectory, source.getName())));
+        }
+        return artifacts;
+    }
+
+    private File getTarget(File source) {
+        return new File(controllerDirectory, source.getName());
+    }
+
+    @Test
+    public void filesAreTransferredThenDeletedOnTheNode() throws Exception {
+        byte[] zip = randomBytes(100 * 1024);
+        byte[] mht = textBytes(300 * 1024);
+        File zipFile = createFile("report.zip", zip);
+        File mhtFile = createFile("report.mht", mht);
+
+        LCArtifactTransfer transfer = new LCArtifactTransfer(connection, listener);
+        Set<String> received = transfer.transfer(toArtifacts(zipFile, mhtFile));
+
+        assertEquals(2, received.size());
+        assertTrue(received.contains(zipFile.getPath()));
+        assertArrayEquals(zip, Files.readAllBytes(getTarget(zipFile).toPath()));
+        assertArrayEquals(mht, Files.readAllBytes(getTarget(mhtFile).toPath()));
+        assertFalse(zipFile.exists());
+        assertFalse(mhtFile.exists());
+
+        assertEquals(zip.length + mht.length, transfer.getBytes());
+        // The random archive does not compress, the text does
+        assertTrue(transfer.getCompressedBytes() > zip.length);
+        assertTrue(transfer.getCompressedBytes() < transfer.getBytes() / 2);
+        assertTrue(transfer.getFileTransferTimes().containsKey("report.zip"));
+        assertTrue(transfer.getFileTransferTimes().containsKey("report.mht"));
+    }
+
+    @Test
+    public void truncatedStreamLeavesTheNodeFiles() throws Exception {
+        File zipFile = createFile("report.zip", randomBytes(100 * 1024));
+        File mhtFile = createFile("report.mht", textBytes(100 * 1024));
+        connection.channel = new FaultyChannel() {
+            @Override
+            Object filter(Callable<?, ?> callable, Object result) {
+                if (callable instanceof LCArtifactTransfer.SenderCallable) {
+                    return new BoundedInputStream((InputStream) result, 50 * 1024);
+                }
+                return result;
+            }
+        };
+
+        try {
+            new LCArtifactTransfer(connection, listener).transfer(toArtifacts(zipFile, mhtFile));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertTrue(zipFile.exists());
+        assertTrue(mhtFile.exists());
+    }
+
+    @Test
+    public void fileWithWrongChecksumIsNotReceived() throws Exception {
+        final byte[] content = textBytes(10 * 1024);
+        File mhtFile = createFile("report.mht", content);
+        connection.channel = new FaultyChannel() {
+            @Override
+            Object filter(Callable<?, ?> callable, Object result) throws IOException {
+                if (!(callable instanceof LCArtifactTransfer.SenderCallable)) {
+                    return result;
+                }
+                ((InputStream) result).close();
+
+                // The framing of the sender with a checksum that does not match the content
+                ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(stream));
+                data.writeLong(content.length);
+                data.write(content);
+                data.write(new byte[16]);
+                data.close();
+                return new ByteArrayInputStream(stream.toByteArray());
+            }
+        };
+
+        Set<String> received = new LCArtifactTransfer(connection, listener).transfer(toArtifacts(mhtFile));
+
+        assertTrue(received.isEmpty());
+        assertFalse(getTarget(mhtFile).exists());
+        assertTrue(mhtFile.exists());
+    }
+
+    private static final int CHUNK = 64 * 1024;
+
+    private LCArtifactTransfer createChunkedTransfer() {
+        LCArtifactTransfer transfer = new LCArtifactTransfer(connection, listener);
+        transfer.setChunking(CHUNK, CHUNK);
+        return transfer;
+    }
+
+    /**
+     * Spoils the checksum of the chunk at the offset the given number of times.
+     */
+    private class CorruptingChannel extends FaultyChannel {
+
+        private final long offset;
+        private int corruptions;
+
+        CorruptingChannel(long offset, int corruptions) {
+            this.offset = offset;
+            this.corruptions = corruptions;
+        }
+
+        @Override
+        synchronized Object filter(Callable<?, ?> callable, Object result) {
+            if (result instanceof LCArtifactTransfer.Chunk) {
+                LCArtifactTransfer.Chunk chunk = (LCArtifactTransfer.Chunk) result;
+                if (chunk.offset == offset && corruptions > 0) {
+                    corruptions--;
+                    return new LCArtifactTransfer.Chunk(chunk.offset, chunk.length, chunk.crc ^ 1, chunk.data);
+                }
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void chunksAreTransferredThenDeletedOnTheNode() throws Exception {
+        byte[] content = textBytes(5 * CHUNK + 1000);
+        File mhtFile = createFile("report.mht", content);
+
+        LCArtifactTransfer transfer = createChunkedTransfer();
+        Set<String> received = transfer.transfer(toArtifacts(mhtFile));
+
+        assertTrue(received.contains(mhtFile.getPath()));
+        assertArrayEquals(content, Files.readAllBytes(getTarget(mhtFile).toPath()));
+        assertFalse(new File(getTarget(mhtFile).getPath() + ".part").exists());
+        assertFalse(mhtFile.exists());
+        assertEquals(content.length, transfer.getBytes());
+        assertTrue(transfer.getCompressedBytes() < transfer.getBytes() / 2);
+    }
+
+    @Test
+    public void chunkWithWrongChecksumIsRequestedAgain() throws Exception {
+        byte[] content = randomBytes(5 * CHUNK + 1000);
+        File zipFile = createFile("report.zip", content);
+        connection.channel = new CorruptingChannel(2 * CHUNK, 2);
+
+        Set<String> received = createChunkedTransfer().transfer(toArtifacts(zipFile));
+
+        assertTrue(received.contains(zipFile.getPath()));
+        assertArrayEquals(content, Files.readAllBytes(getTarget(zipFile).toPath()));
+        assertFalse(zipFile.exists());
+    }
+
+    @Test
+    public void chunkWithWrongChecksumFailsAfterRetries() throws Exception {
+        File zipFile = createFile("report.zip", randomBytes(5 * CHUNK + 1000));
+        connection.channel = new CorruptingChannel(2 * CHUNK, Integer.MAX_VALUE);
+
+        try {
+            createChunkedTransfer().transfer(toArtifacts(zipFile));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("offset " + 2 * CHUNK));
+        }
+
+        assertFalse(getTarget(zipFile).exists());
+        assertTrue(zipFile.exists());
+    }
+
+    @Test(timeout = 10000)
+    public void transferResumesFromTheConfirmedOffsetAfterReconnect() throws Exception {
+        byte[] content = randomBytes(8 * CHUNK + 1000);
+        File zipFile = createFile("report.zip", content);
+
+        final List<Long> resumedOffsets = Collections.synchronizedList(new ArrayList<Long>());
+        final FaultyChannel reconnected = new FaultyChannel() {
+            @Override
+            Object filter(Callable<?, ?> callable, Object result) {
+                if (result instanceof LCArtifactTransfer.Chunk) {
+                    resumedOffsets.add(((LCArtifactTransfer.Chunk) result).offset);
+                }
+                return result;
+            }
+        };
+        connection.channel = new FaultyChannel() {
+            @Override
+            synchronized Object filter(Callable<?, ?> callable, Object result) throws IOException {
+                if (result instanceof LCArtifactTransfer.Chunk
+                        && ((LCArtifactTransfer.Chunk) result).offset >= 3 * CHUNK) {
+                    // The node reconnects while the request is lost with the old channel
+                    connection.channel = reconnected;
+                    throw new IOException(new RequestAbortedException(new IOException("Connection reset")));
+                }
+                return result;
+            }
+        };
+
+        Set<String> received = createChunkedTransfer().transfer(toArtifacts(zipFile));
+
+        assertTrue(received.contains(zipFile.getPath()));
+        assertArrayEquals(content, Files.readAllBytes(getTarget(zipFile).toPath()));
+        assertEquals(3L * CHUNK, (long) Collections.min(resumedOffsets));
+        assertTrue(log.toString(CHARSET.name()).contains("from byte " + 3 * CHUNK));
+    }
+
+    @Test(timeout = 10000)
+    public void otherFailuresAreNotRetried() throws Exception {
+        File zipFile = createFile("report.zip", randomBytes(5 * CHUNK + 1000));
+        final IOException failure = new IOException("No space left on device");
+        connection.channel = new FaultyChannel() {
+            @Override
+            Object filter(Callable<?, ?> callable, Object result) throws IOException {
+                if (result instanceof LCArtifactTransfer.Chunk && ((LCArtifactTransfer.Chunk) result).offset == CHUNK) {
+                    throw failure;
+                }
+                return result;
+            }
+        };
+
+        try {
+            createChunkedTransfer().transfer(toArtifacts(zipFile));
+            fail();
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+
+        assertFalse(log.toString(CHARSET.name()).contains("Resuming"));
+        assertTrue(zipFile.exists());
+    }
+
+    @Test
+    public void fileWithWrongDigestIsNotReceived() throws Exception {
+        File zipFile = createFile("report.zip", randomBytes(5 * CHUNK + 1000));
+        connection.channel = new FaultyChannel() {
+            @Override
+            Object filter(Callable<?, ?> callable, Object result) {
+                boolean digest = callable instanceof LCArtifactTransfer.DigestCallable;
+                return digest ? "00000000000000000000000000000000" : result;
+            }
+        };
+
+        Set<String> received = createChunkedTransfer().transfer(toArtifacts(zipFile));
+
+        assertTrue(received.isEmpty());
+        assertFalse(getTarget(zipFile).exists());
+        assertFalse(new File(getTarget(zipFile).getPath() + ".part").exists());
+        assertTrue(zipFile.exists());
+    }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Serves entries of a report archive with hand-made requests and checks the validators.
+ */
+public class LCDynamicReportActionTest {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final String ENTRY = "index.html";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File buildDirectory;
+    private byte[] content;
+    private LCDynamicReportAction action;
+
+    @Before
+    public void setUp() throws IOException {
+        buildDirectory = folder.newFolder("build");
+        File reportsDirectory = new File(buildDirectory, Constants.REPORTS_DIRECTORY_NAME);
+        reportsDirectory.mkdirs();
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            builder.append("<div class=\"row\">").append(i).append("</div>\n");
+        }
+        content = builder.toString().getBytes(CHARSET);
+
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(
+                new File(reportsDirectory, "report" + Constants.ZIP_FILE_EXTENSION)));
+        try {
+            output.putNextEntry(new ZipEntry(ENTRY));
+            output.write(content);
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+        action = new LCDynamicReportAction(reportsDirectory.getPath() + File.separator);
+    }
+
+    @After
+    public void tearDown() {
+        LCExplodedReportCache.getInstance().evictDirectory(buildDirectory);
+        LCReportArchiveCache.getInstance().evictDirectory(buildDirectory);
+    }
+
+    @Test
+    public void gzipAndIdentityResponsesHaveDifferentTags() throws Exception {
+        Response identity = get(ENTRY, null, null);
+        Response gzip = get(ENTRY, "gzip, deflate", null);
+
+        assertEquals(200, identity.status);
+        assertEquals(200, gzip.status);
+        assertNull(identity.headers.get("Content-Encoding"));
+        assertEquals("gzip", gzip.headers.get("Content-Encoding"));
+        assertNotNull(identity.headers.get("ETag"));
+        assertNotEquals(identity.headers.get("ETag"), gzip.headers.get("ETag"));
+        assertEquals("Accept-Encoding", gzip.headers.get("Vary"));
+
+        assertArrayEquals(content, identity.body.toByteArray());
+        assertArrayEquals(content, gunzip(gzip.body.toByteArray()));
+    }
+
+    @Test
+    public void tagOfOtherEncodingDoesNotValidate() throws Exception {
+        String identityTag = get(ENTRY, null, null).headers.get("ETag");
+        String gzipTag = get(ENTRY, "gzip", null).headers.get("ETag");
+
+        assertEquals(200, get(ENTRY, "gzip", identityTag).status);
+        assertEquals(200, get(ENTRY, null, gzipTag).status);
+    }
+
+    @Test
+    public void notModifiedCarriesTheTag() throws Exception {
+        String gzipTag = get(ENTRY, "gzip", null).headers.get("ETag");
+
+        Response response = get(ENTRY, "gzip", "W/" + gzipTag);
+        assertEquals(304, response.status);
+        assertEquals(gzipTag, response.headers.get("ETag"));
+        assertEquals("Accept-Encoding", response.headers.get("Vary"));
+        assertEquals(0, response.body.size());
+    }
+
+    @Test
+    public void anyTagMatchesOnlyExistingEntries() throws Exception {
+        assertEquals(304, get(ENTRY, null, "*").status);
+        assertEquals(404, get("missing.html", null, "*").status);
+    }
+
+    private Response get(String entry, String acceptEncoding, String ifNoneMatch) throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        if (acceptEncoding != null) {
+            headers.put("Accept-Encoding", acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            headers.put("If-None-Match", ifNoneMatch);
+        }
+        Response response = new Response();
+        action.doDynamic(createRequest("/report/" + entry, headers), response.createProxy());
+        return response;
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        InputStream input = new GZIPInputStream(new ByteArrayInputStream(data));
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            copy(input, output);
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+    }
+
+    private static StaplerRequest createRequest(final String restOfPath, final Map<String, String> headers) {
+        final ServletContext context = (ServletContext) createProxy(ServletContext.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return getDefaultValue(method);
+            }
+        });
+        final Stapler stapler = new Stapler() {
+            @Override
+            public ServletContext getServletContext() {
+                return context;
+            }
+        };
+
+        return (StaplerRequest) createProxy(StaplerRequest.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getMethod")) {
+                    return "GET";
+                } else if (name.equals("getRestOfPath")) {
+                    return restOfPath;
+                } else if (name.equals("getStapler")) {
+                    return stapler;
+                } else if (name.equals("getHeader")) {
+                    return headers.get((String) args[0]);
+                } else if (name.equals("getDateHeader")) {
+                    return -1L;
+                }
+                return getDefaultValue(method);
+            }
+        });
+    }
+
+    private static Object createProxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(LCDynamicReportActionTest.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object getDefaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * Records the status, headers and body written by the action.
+     */
+    private static class Response {
+
+        int status = 200;
+        final Map<String, String> headers = new HashMap<String, String>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        StaplerResponse createProxy() {
+            final ServletOutputStream outputStream = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+
+                @Override
+                public void write(byte[] buffer, int offset, int length) {
+                    body.write(buffer, offset, length);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+            };
+
+            return (StaplerResponse) LCDynamicReportActionTest.createProxy(StaplerResponse.class,
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+                            String name = method.getName();
+                            if (name.equals("setHeader") || name.equals("addHeader")) {
+                                headers.put((String) args[0], String.valueOf(args[1]));
+                            } else if (name.equals("setStatus") || name.equals("sendError")) {
+                                status = (Integer) args[0];
+                            } else if (name.equals("getOutputStream")) {
+                                return outputStream;
+                            } else if (name.equals("serveFile") && args.length > 1 &&
+                                    args[1] instanceof InputStream) {
+                                copy((InputStream) args[1], outputStream);
+                            }
+                            return getDefaultValue(method);
+                        }
+                    });
+        }
+
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Extracts archives laid out like build directories, running the background work when the test asks for it.
+ */
+public class LCExplodedReportCacheTest {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final QueuedExecutor executor = new QueuedExecutor();
+
+    @Test
+    public void archiveIsExtractedInTheBackground() throws IOException {
+        File archive = createArchive(folder.newFolder("builds", "1"), "report", 1000);
+        LCExplodedReportCache cache = new LCExplodedReportCache(1024 * 1024, 2, executor);
+
+        assertNull(cache.acquire(archive));
+        assertNull(cache.acquire(archive));
+        assertEquals(1, executor.size());
+        // the extraction is queued once, requests in between are served from the archive
+        assertNull(cache.acquire(archive));
+        assertEquals(1, executor.size());
+
+        executor.runAll();
+        LCExplodedReportCache.Report report = cache.acquire(archive);
+        assertNotNull(report);
+        assertNotNull(report.getItem("index.html"));
+        assertEquals(report.getSize(), cache.getTotalSize());
+        cache.release(report);
+    }
+
+    @Test
+    public void scanCountsReportsExtractedBeforeTheStart() throws IOException {
+        File builds = folder.newFolder("builds");
+        File first = createArchive(new File(builds, "1"), "report", 1000);
+        File second = createArchive(new File(builds, "2"), "report", 1000);
+        extract(first);
+        extract(second);
+
+        LCExplodedReportCache cache = new LCExplodedReportCache(1024 * 1024, 2, executor);
+        cache.scan(Collections.singletonList(builds));
+
+        assertEquals(2, cache.getReportCount());
+        assertTrue(cache.getTotalSize() > 0);
+        LCExplodedReportCache.Report report = cache.acquire(first);
+        assertNotNull(report);
+        cache.release(report);
+        assertEquals(0, executor.size());
+    }
+
+    @Test
+    public void scanEvictsTheOldestReportsOverTheLimit() throws IOException {
+        File builds = folder.newFolder("builds");
+        File first = createArchive(new File(builds, "1"), "report", 1000);
+        File second = createArchive(new File(builds, "2"), "report", 1000);
+        long size = extract(first);
+        extract(second);
+        File firstDirectory = LCExplodedReportCache.getDirectory(first);
+        File secondDirectory = LCExplodedReportCache.getDirectory(second);
+        assertTrue(firstDirectory.setLastModified(System.currentTimeMillis() - 60000) |
+                new File(firstDirectory, "index.properties").setLastModified(System.currentTimeMillis() - 60000));
+
+        LCExplodedReportCache cache = new LCExplodedReportCache(size + size / 2, 2, executor);
+        cache.scan(Collections.singletonList(builds));
+
+        assertEquals(1, cache.getReportCount());
+        assertEquals(size, cache.getTotalSize());
+        assertFalse(firstDirectory.exists());
+        assertTrue(secondDirectory.isDirectory());
+    }
+
+    @Test
+    public void reportIsCountedUntilItsFilesAreDeleted() throws IOException {
+        File builds = folder.newFolder("builds");
+        File first = createArchive(new File(builds, "1"), "report", 1000);
+        File second = createArchive(new File(builds, "2"), "report", 1000);
+        long size = extract(first);
+        extract(second);
+        final File firstDirectory = LCExplodedReportCache.getDirectory(first);
+        assertTrue(firstDirectory.setLastModified(System.currentTimeMillis() - 60000) |
+                new File(firstDirectory, "index.properties").setLastModified(System.currentTimeMillis() - 60000));
+
+        final Set<File> locked = new HashSet<File>(Collections.singleton(firstDirectory));
+        LCExplodedReportCache cache = new LCExplodedReportCache(size + size / 2, 2, executor) {
+            @Override
+            boolean delete(File directory) {
+                return !locked.contains(directory) && super.delete(directory);
+            }
+        };
+        cache.scan(Collections.singletonList(builds));
+
+        assertEquals(1, cache.getReportCount());
+        assertEquals(2 * size, cache.getTotalSize());
+        assertTrue(firstDirectory.isDirectory());
+
+        locked.clear();
+        cache.scan(Collections.<File>emptyList());
+
+        assertEquals(1, cache.getReportCount());
+        assertEquals(size, cache.getTotalSize());
+        assertFalse(firstDirectory.exists());
+    }
+
+    @Test
+    public void scanDeletesOrphanedAndIncompleteDirectories() throws IOException {
+        File builds = folder.newFolder("builds");
+        File archive = createArchive(new File(builds, "1"), "report", 1000);
+        extract(archive);
+        File cacheDirectory = LCExplodedReportCache.getDirectory(archive).getParentFile();
+        File orphan = new File(cacheDirectory, "deleted");
+        File temp = new File(cacheDirectory, ".report-1.tmp");
+        assertTrue(new File(orphan, "files").mkdirs());
+        assertTrue(new File(temp, "files").mkdirs());
+
+        LCExplodedReportCache cache = new LCExplodedReportCache(1024 * 1024, 2, executor);
+        cache.scan(Collections.singletonList(builds));
+
+        assertEquals(1, cache.getReportCount());
+        assertFalse(orphan.exists());
+        assertFalse(temp.exists());
+    }
+
+    @Test
+    public void changedArchiveIsNotRegistered() throws IOException {
+        File builds = folder.newFolder("builds");
+        File archive = createArchive(new File(builds, "1"), "report", 1000);
+        extract(archive);
+        createArchive(new File(builds, "1"), "report", 2000);
+
+        LCExplodedReportCache cache = new LCExplodedReportCache(1024 * 1024, 2, executor);
+        cache.scan(Collections.singletonList(builds));
+
+        assertEquals(0, cache.getReportCount());
+        assertEquals(0, cache.getTotalSize());
+        assertFalse(LCExplodedReportCache.getDirectory(archive).exists());
+    }
+
+    /**
+     * Extracts the archive with a cache of its own.
+     *
+     * @return the size of the extracted files
+     */
+    private long extract(File archive) {
+        QueuedExecutor extractor = new QueuedExecutor();
+        LCExplodedReportCache cache = new LCExplodedReportCache(1024 * 1024, 1, extractor);
+        assertNull(cache.acquire(archive));
+        extractor.runAll();
+        assertEquals(1, cache.getReportCount());
+        LCReportArchiveCache.getInstance().evictDirectory(archive.getParentFile().getParentFile());
+        return cache.getTotalSize();
+    }
+
+    private static File createArchive(File runDirectory, String name, int rows) throws IOException {
+        File reportsDirectory = new File(runDirectory, Constants.REPORTS_DIRECTORY_NAME);
+        if (!reportsDirectory.isDirectory() && !reportsDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + reportsDirectory);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            builder.append("<div class=\"row\">").append(i).append("</div>\n");
+        }
+
+        File archive = new File(reportsDirectory, name + Constants.ZIP_FILE_EXTENSION);
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            output.putNextEntry(new ZipEntry("index.html"));
+            output.write(builder.toString().getBytes(CHARSET));
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+        return archive.getAbsoluteFile();
+    }
+
+    private static class QueuedExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        int size() {
+            return tasks.size();
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Follows the way the build step and the node page use the cache: the build step passes the fresh
+ * installations to the node probe, which checks them there, and stores the result of a new scan;
+ * the node page rescans on request.
+ */
+public class LCInstallationsCacheTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class FakeSource implements LCInstallationsSource {
+
+        private List<LCInstallation> installations = new ArrayList<LCInstallation>();
+        private int scans = 0;
+
+        public List<LCInstallation> scan() {
+            scans++;
+            return new ArrayList<LCInstallation>(installations);
+        }
+    }
+
+    private static LCInstallation installation(String version) {
+        return new LCInstallation("C:\\LoadComplete " + version + "\\bin\\LoadComplete.exe", version, 1024, 0);
+    }
+
+    private LCInstallation createExecutor(String version, int size) throws IOException {
+        File executor = folder.newFile("LoadComplete-" + version + ".exe");
+        FileOutputStream output = new FileOutputStream(executor);
+        try {
+            output.write(new byte[size]);
+        } finally {
+            output.close();
+        }
+        return new LCInstallation(executor.getPath(), version, executor.length(), executor.lastModified());
+    }
+
+    @Test
+    public void storedProbeResultsAreFreshForTheTtl() {
+        LCInstallationsCache cache = new LCInstallationsCache(HOUR, HOUR);
+        List<LCInstallation> installations = Collections.singletonList(installation("4.97.1.21"));
+
+        assertNull(cache.getFresh("node"));
+        cache.put("node", installations);
+
+        assertEquals(installations, cache.getFresh("node"));
+        assertNull(cache.getFresh("other"));
+    }
+
+    @Test
+    public void expiredEntriesAreNotFresh() {
+        LCInstallationsCache cache = new LCInstallationsCache(0, 0);
+
+        cache.put("node", Collections.singletonList(installation("4.97.1.21")));
+
+        // The probe scans the node again, the node page still shows the last result
+        assertNull(cache.getFresh("node"));
+        assertEquals(1, cache.getCached("node").size());
+    }
+
+    @Test
+    public void nodesWithoutInstallationsAreProbedAgainAfterTheNegativeTtl() {
+        LCInstallationsCache cache = new LCInstallationsCache(HOUR, 0);
+
+        cache.put("node", Collections.<LCInstallation>emptyList());
+        assertNull(cache.getFresh("node"));
+        assertTrue(cache.getCached("node").isEmpty());
+
+        // LoadComplete has been installed after the first scan
+        cache.put("node", Collections.singletonList(installation("4.97.1.21")));
+        assertEquals(1, cache.getFresh("node").size());
+    }
+
+    @Test
+    public void emptyResultsAreKeptForTheNegativeTtl() {
+        LCInstallationsCache cache = new LCInstallationsCache(0, HOUR);
+
+        cache.put("node", Collections.<LCInstallation>emptyList());
+
+        assertTrue(cache.getFresh("node").isEmpty());
+    }
+
+    @Test
+    public void rescanReplacesTheCachedInstallations() throws Exception {
+        LCInstallationsCache cache = new LCInstallationsCache(HOUR, HOUR);
+        FakeSource source = new FakeSource();
+        cache.put("node", Collections.singletonList(installation("4.97.1.21")));
+
+        source.installations.add(installation("4.98.0.5"));
+        List<LCInstallation> installations = cache.rescan("node", source);
+
+        assertEquals(1, source.scans);
+        assertEquals("4.98.0.5", installations.get(0).getVersion());
+        assertSame(installations, cache.getFresh("node"));
+    }
+
+    @Test
+    public void invalidatedNodesAreProbedAgain() {
+        LCInstallationsCache cache = new LCInstallationsCache(HOUR, HOUR);
+        cache.put("node", Collections.singletonList(installation("4.97.1.21")));
+        cache.put("other", Collections.singletonList(installation("4.97.1.21")));
+
+        cache.invalidate("node");
+
+        assertNull(cache.getFresh("node"));
+        assertNull(cache.getCached("node"));
+        assertEquals(1, cache.getFresh("other").size());
+    }
+
+    @Test
+    public void probeKeepsUnchangedExecutors() throws IOException {
+        LCInstallation installation = createExecutor("4.97.1.21", 1024);
+
+        assertTrue(LCInstallationsScanner.isUpToDateLocal(Collections.singletonList(installation)));
+    }
+
+    @Test
+    public void probeScansAgainWhenAnExecutorChanged() throws IOException {
+        LCInstallation installation = createExecutor("4.97.1.21", 1024);
+        LCInstallation changed = new LCInstallation(installation.getExecutorPath(), installation.getVersion(),
+                installation.getExecutorSize() + 1, installation.getExecutorLastModified());
+        LCInstallation removed = new LCInstallation(new File(folder.getRoot(), "missing.exe").getPath(),
+                "4.98.0.5", 1024, 0);
+
+        assertFalse(LCInstallationsScanner.isUpToDateLocal(Collections.singletonList(changed)));
+        assertFalse(LCInstallationsScanner.isUpToDateLocal(Collections.singletonList(removed)));
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the series of deleted nodes are dropped and that a metric stops growing at its series limit.
+ */
+public class LCMetricsTest {
+
+    private static String write(LCMetrics metrics) {
+        StringWriter output = new StringWriter();
+        metrics.write(new PrintWriter(output));
+        return output.toString();
+    }
+
+    @Test
+    public void seriesOfARemovedNodeAreDropped() {
+        LCMetrics metrics = new LCMetrics(10);
+        metrics.observe(LCMetrics.NODE_LOCK_WAIT, 1000, "node", "agent-1");
+        metrics.observe(LCMetrics.NODE_LOCK_WAIT, 1000, "node", "agent-10");
+
+        metrics.removeSeries("node", "agent-1");
+
+        String output = write(metrics);
+        assertFalse(output.contains("node=\"agent-1\""));
+        assertTrue(output.contains("loadcomplete_node_lock_wait_seconds_count{node=\"agent-10\"} 1"));
+    }
+
+    @Test
+    public void labelValuesOverTheLimitAreCountedAsOther() {
+        LCMetrics metrics = new LCMetrics(2);
+        for (int i = 0; i < 5; i++) {
+            metrics.increment(LCMetrics.TEST_RUNS, 1, "exit_code", String.valueOf(i));
+        }
+
+        String output = write(metrics);
+        assertTrue(output.contains("loadcomplete_test_runs_total{exit_code=\"0\"} 1"));
+        assertTrue(output.contains("loadcomplete_test_runs_total{exit_code=\"1\"} 1"));
+        assertTrue(output.contains("loadcomplete_test_runs_total{exit_code=\"other\"} 3"));
+        assertFalse(output.contains("exit_code=\"2\""));
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.util.StreamTaskListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds the runner output fixture through the monitor. The fixture mixes progress lines with messages
+ * that mention users and errors, which must be written as they are.
+ */
+public class LCProgressMonitorTest {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private Locale defaultLocale;
+
+    @Before
+    public void setUp() {
+        defaultLocale = Locale.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    @Test
+    public void onlyProgressLinesAreRecognized() throws IOException {
+        LCProgressMonitor monitor = new LCProgressMonitor(10);
+        List<String> passed = new ArrayList<String>();
+        List<LCProgress> updates = new ArrayList<LCProgress>();
+        long elapsed = 0;
+        for (String line : readFixture()) {
+            LCProgress progress = monitor.processLine(line, elapsed += 1000);
+            if (progress == null) {
+                passed.add(line);
+            } else {
+                updates.add(progress);
+            }
+        }
+
+        assertEquals(3, updates.size());
+        assertEquals(7, passed.size());
+        assertTrue(passed.contains("Errors: see the test log for details"));
+        assertTrue(passed.contains("Virtual users: 10 reached"));
+
+        assertEquals(2, updates.get(0).getVirtualUsers());
+        assertEquals(3.5, updates.get(0).getRequestsPerSecond(), 1e-9);
+        assertEquals(0, updates.get(0).getErrors());
+        assertEquals(350, updates.get(1).getResponseTime());
+        assertEquals(10, updates.get(2).getVirtualUsers());
+        assertEquals(20.5, updates.get(2).getRequestsPerSecond(), 1e-9);
+        assertEquals(3, updates.get(2).getErrors());
+    }
+
+    @Test
+    public void progressIsFormattedIndependentlyOfTheLocale() {
+        Locale.setDefault(Locale.GERMANY);
+        LCProgressMonitor monitor = new LCProgressMonitor(10);
+        monitor.processLine("Virtual users: 6, Requests/sec: 12.25, Errors: 1", 5000);
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        monitor.writeProgress(new StreamTaskListener(log, CHARSET), System.nanoTime(), true);
+
+        String written = new String(log.toByteArray(), CHARSET);
+        assertTrue(written, written.contains("12.3 request"));
+    }
+
+    private List<String> readFixture() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                getClass().getResourceAsStream("runner-output.txt"), CHARSET));
+        try {
+            List<String> lines = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+
+}
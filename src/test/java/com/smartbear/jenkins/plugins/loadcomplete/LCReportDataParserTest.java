@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Parses report archives holding the report data fixture, which places summaries next to their samples.
+ * The fixture is written by hand after the report pages, not captured from a real run, so the statistics
+ * stay unverified, see {@link LCReportDataParser#isVerified()}.
+ */
+public class LCReportDataParserTest {
+
+    private static final String FIXTURE = "report.data";
+
+    // A run of 4 seconds whose start time is not known
+    private static final LCLogInfo RUN = new LCLogInfo(0, 4000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void summariesAreNotCountedAsSamples() throws IOException {
+        LCReportMetrics metrics = LCReportDataParser.parse(createArchive("data/report.data"), RUN);
+
+        LCTransactionMetrics total = metrics.getTotal();
+        assertEquals(6, total.getCount());
+        assertEquals(1, total.getErrors());
+        assertEquals(2, metrics.getTransactions().size());
+        assertNull(metrics.getTransaction("Smoke"));
+    }
+
+    @Test
+    public void samplesBelongToTheNearestNamedObject() throws IOException {
+        LCReportMetrics metrics = LCReportDataParser.parse(createArchive("data/report.data"), RUN);
+
+        LCTransactionMetrics login = metrics.getTransaction("Login");
+        assertNotNull(login);
+        assertEquals(3, login.getCount());
+        assertEquals(0, login.getErrors());
+        assertEquals(150, login.getMean(), 1);
+        assertEquals(2, login.getVirtualUsers());
+        // from the first sample start to the end of the last one
+        assertEquals(2200, login.getDuration());
+
+        LCTransactionMetrics search = metrics.getTransaction("Search");
+        assertNotNull(search);
+        assertEquals(3, search.getCount());
+        assertEquals(1, search.getErrors());
+        assertEquals(260, search.getMean(), 2);
+    }
+
+    @Test
+    public void allDataEntriesAreRead() throws IOException {
+        LCReportMetrics metrics = LCReportDataParser.parse(
+                createArchive("data/report.data", "data/report.data1"), RUN);
+
+        assertEquals(12, metrics.getTotal().getCount());
+        assertEquals(6, metrics.getTransaction("Login").getCount());
+    }
+
+    private File createArchive(String... entryNames) throws IOException {
+        File archive = folder.newFile("report" + Constants.ZIP_FILE_EXTENSION);
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            output.putNextEntry(new ZipEntry("index.html"));
+            output.closeEntry();
+            for (String entryName : entryNames) {
+                output.putNextEntry(new ZipEntry(entryName));
+                InputStream input = getClass().getResourceAsStream(FIXTURE);
+                try {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = input.read(buffer)) != -1) {
+                        output.write(buffer, 0, read);
+                    }
+                } finally {
+                    input.close();
+                }
+                output.closeEntry();
+            }
+        } finally {
+            output.close();
+        }
+        return archive;
+    }
+
+}
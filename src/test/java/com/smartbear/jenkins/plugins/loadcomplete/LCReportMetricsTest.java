@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Combines, saves and loads the statistics of test runs.
+ */
+public class LCReportMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void combinedTestsRunOneAfterAnother() {
+        LCReportMetrics first = createMetrics(1000000, 100, 60000, 10, 50);
+        LCReportMetrics second = createMetrics(1060000, 300, 120000, 20, 150);
+
+        LCReportMetrics combined = LCReportMetrics.combine(Arrays.asList(first, second));
+
+        LCTransactionMetrics login = combined.getTransaction("Login");
+        assertEquals(400, login.getCount());
+        assertEquals(180000, login.getDuration());
+        assertEquals(20, login.getVirtualUsers());
+        assertEquals(400 * 1000.0 / 180000, login.getThroughput(), 1e-9);
+        assertEquals(400, combined.getTotal().getCount());
+    }
+
+    @Test
+    public void overlappingTestsRunAtTheSameTime() {
+        // Parallel branches: the second run starts 30 s into the first one and ends 90 s after it
+        LCReportMetrics first = createMetrics(1000000, 100, 60000, 10, 50);
+        LCReportMetrics second = createMetrics(1030000, 300, 120000, 20, 150);
+        LCReportMetrics later = createMetrics(2000000, 50, 10000, 25, 100);
+
+        LCReportMetrics combined = LCReportMetrics.combine(Arrays.asList(first, second));
+
+        LCTransactionMetrics login = combined.getTransaction("Login");
+        assertEquals(400, login.getCount());
+        assertEquals(150000, login.getDuration());
+        assertEquals(30, login.getVirtualUsers());
+        assertEquals(400 * 1000.0 / 150000, login.getThroughput(), 1e-9);
+
+        LCTransactionMetrics total = LCReportMetrics.combine(Arrays.asList(later, first, second)).getTotal();
+        assertEquals(160000, total.getDuration());
+        assertEquals(30, total.getVirtualUsers());
+    }
+
+    @Test
+    public void testsWithoutStartTimeCountAsRunApart() {
+        LCReportMetrics first = createMetrics(0, 100, 60000, 10, 50);
+        LCReportMetrics second = createMetrics(1000000, 300, 120000, 20, 150);
+
+        LCTransactionMetrics login = LCReportMetrics.combine(Arrays.asList(first, second)).getTransaction("Login");
+        assertEquals(180000, login.getDuration());
+        assertEquals(20, login.getVirtualUsers());
+    }
+
+    @Test
+    public void savedMetricsAreLoaded() throws IOException {
+        LCReportMetrics metrics = createMetrics(1000000, 100, 60000, 10, 50);
+        File file = new File(folder.getRoot(), "report.metrics");
+
+        metrics.save(file);
+        LCReportMetrics loaded = LCReportMetrics.load(file);
+
+        LCTransactionMetrics login = loaded.getTransaction("Login");
+        assertEquals(100, login.getCount());
+        assertEquals(60000, login.getDuration());
+        assertEquals(10, login.getVirtualUsers());
+        assertEquals(metrics.getTotal().getP95(), loaded.getTotal().getP95());
+        assertEquals(1000000, loaded.getStartTime());
+    }
+
+    @Test
+    public void otherFileVersionsAreRejected() throws IOException {
+        File file = new File(folder.getRoot(), "report.metrics");
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        try {
+            output.writeInt(0x4C434D54);
+            output.writeInt(1);
+            output.writeInt(0);
+        } finally {
+            output.close();
+        }
+
+        try {
+            LCReportMetrics.load(file);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static LCReportMetrics createMetrics(long startTime, int count, long duration, int virtualUsers,
+                                                 long responseTime) {
+        LCHistogram histogram = new LCHistogram();
+        for (int i = 0; i < count; i++) {
+            histogram.record(responseTime);
+        }
+        LCHistogram total = new LCHistogram();
+        total.merge(histogram);
+        return new LCReportMetrics(
+                Collections.singletonList(new LCTransactionMetrics("Login", histogram, 0, duration, virtualUsers)),
+                new LCTransactionMetrics("Total", total, 0, duration, virtualUsers), startTime);
+    }
+
+}
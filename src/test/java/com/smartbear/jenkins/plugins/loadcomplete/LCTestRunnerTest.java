@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, SmartBear Software
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.smartbear.jenkins.plugins.loadcomplete;
+
+import hudson.Functions;
+import hudson.util.StreamTaskListener;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Runs the test runner with shell scripts standing in for the LoadComplete executable.
+ */
+public class LCTestRunnerTest {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ByteArrayOutputStream log;
+    private StreamTaskListener listener;
+
+    @Before
+    public void setUp() {
+        assumeFalse("The stub executables are shell scripts", Functions.isWindows());
+        log = new ByteArrayOutputStream();
+        listener = new StreamTaskListener(log, CHARSET);
+    }
+
+    private String[] createExecutable(String... lines) throws IOException {
+        File script = folder.newFile("LoadComplete.sh");
+        OutputStream output = new FileOutputStream(script);
+        try {
+            output.write("#!/bin/sh\n".getBytes(CHARSET));
+            for (String line : lines) {
+                output.write((line + "\n").getBytes(CHARSET));
+            }
+        } finally {
+            output.close();
+        }
+        return new String[] {"/bin/sh", script.getAbsolutePath()};
+    }
+
+    private LCTestRunner createRunner(String[] command, long timeout, List<String> expectedFiles) {
+        Map<String, String> environment = new HashMap<String, String>();
+        environment.put("LC_TEST_NAME", "Smoke");
+        return new LCTestRunner(command, environment, folder.getRoot().getAbsolutePath(), timeout,
+                expectedFiles, listener);
+    }
+
+    private String getLog() {
+        listener.getLogger().flush();
+        return new String(log.toByteArray(), CHARSET);
+    }
+
+    @Test
+    public void exitCodeOutputAndFilesAreReported() throws Exception {
+        File report = new File(folder.getRoot(), "report.zip");
+        File missing = new File(folder.getRoot(), "report.pdf");
+        String[] command = createExecutable(
+                "echo \"Running $LC_TEST_NAME in $(pwd)\"",
+                "echo report > report.zip",
+                "exit 1");
+
+        LCTestRunner.Result result = createRunner(command, -1,
+                Arrays.asList(report.getAbsolutePath(), missing.getAbsolutePath())).call();
+
+        assertEquals(1, result.getExitCode());
+        assertFalse(result.isTimedOut());
+        assertNull(result.getAbortReason());
+        assertTrue(result.hasFile(report.getAbsolutePath()));
+        assertFalse(result.hasFile(missing.getAbsolutePath()));
+        assertTrue(getLog().contains("Running Smoke in " + folder.getRoot().getCanonicalPath()));
+    }
+
+    @Test
+    public void durationIsMeasuredOnTheNode() throws Exception {
+        String[] command = createExecutable("sleep 1");
+
+        long before = System.currentTimeMillis();
+        LCTestRunner.Result result = createRunner(command, 60, Collections.<String>emptyList()).call();
+
+        assertEquals(0, result.getExitCode());
+        assertTrue(result.getDuration() >= 900);
+        assertTrue(result.getDuration() < 30000);
+        assertTrue(result.getLaunchTime() <= result.getDuration());
+        assertTrue(result.getStartTime() >= before - 1000);
+        assertEquals(result.getStartTime() + result.getDuration(), result.getStopTime());
+    }
+
+    @Test(timeout = 60000)
+    public void runnerIsKilledAfterTheTimeout() throws Exception {
+        String[] command = createExecutable("exec sleep 60");
+
+        LCTestRunner.Result result = createRunner(command, 1, Collections.<String>emptyList()).call();
+
+        assertTrue(result.isTimedOut());
+        assertEquals(-1, result.getExitCode());
+        assertTrue(result.getDuration() < 30000);
+    }
+
+    private static LCProgressMonitor createMonitor(long interval, String abortRules) {
+        LCProgressMonitor monitor = new LCProgressMonitor(interval);
+        monitor.setAbortRules(LCAbortRule.parseAll(abortRules));
+        return monitor;
+    }
+
+    @Test(timeout = 60000)
+    public void runnerIsAskedToStopWhenAnAbortRuleFires() throws Exception {
+        File report = new File(folder.getRoot(), "report.zip");
+        String[] command = createExecutable(
+                "trap 'echo partial > report.zip; exit 3' TERM",
+                "while true; do echo \"Virtual users: 10, Requests/sec: 5.0\"; sleep 0.2; done");
+
+        LCTestRunner runner = createRunner(command, -1, Collections.singletonList(report.getAbsolutePath()));
+        runner.setProgressMonitor(createMonitor(0, "requests/s < 10 for 1 s"));
+        runner.setAbortGracePeriod(30);
+        LCTestRunner.Result result = runner.call();
+
+        assertNotNull(result.getAbortReason());
+        assertEquals(-1, result.getExitCode());
+        assertFalse(result.isTimedOut());
+        assertTrue(result.hasFile(report.getAbsolutePath()));
+        assertTrue(result.getDuration() < 20000);
+        // Without a sampling interval the progress lines are written as they are
+        assertTrue(getLog().contains("Virtual users: 10, Requests/sec: 5.0"));
+    }
+
+    @Test(timeout = 60000)
+    public void runnerIsKilledWhenItDoesNotStopInTheGracePeriod() throws Exception {
+        String[] command = createExecutable(
+                "trap '' TERM",
+                "while true; do echo \"Virtual users: 10, Requests/sec: 5.0\"; sleep 0.2; done");
+
+        LCTestRunner runner = createRunner(command, -1, Collections.<String>emptyList());
+        runner.setProgressMonitor(createMonitor(0, "requests/s < 10 for 1 s"));
+        runner.setAbortGracePeriod(1);
+        LCTestRunner.Result result = runner.call();
+
+        assertNotNull(result.getAbortReason());
+        assertEquals(-1, result.getExitCode());
+        assertTrue(result.getDuration() < 20000);
+    }
+
+}